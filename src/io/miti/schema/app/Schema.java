@@ -3,6 +3,10 @@ package io.miti.schema.app;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.ClipboardOwner;
@@ -10,24 +14,34 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.SoftBevelBorder;
@@ -36,16 +50,28 @@ import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
+import io.miti.schema.gui.ColumnSizer;
 import io.miti.schema.gui.MousePopupListener;
+import io.miti.schema.gui.SortableHeader;
 import io.miti.schema.gui.StripeRenderer;
+import io.miti.schema.model.SearchListener;
+import io.miti.schema.model.SearchScheduler;
+import io.miti.schema.model.SubsetCache;
 import io.miti.schema.model.TableListModel;
+import io.miti.schema.model.TableSubset;
 import io.miti.schema.model.TableTableIntRenderer;
 import io.miti.schema.model.TableTableModel;
 import io.miti.schema.util.Content;
+import io.miti.schema.util.Logger;
+import io.miti.schema.util.StartupTimer;
+import io.miti.schema.util.UIMonitor;
 import io.miti.schema.util.Utility;
 import io.miti.schema.util.WindowState;
+import io.miti.schema.cache.CacheListener;
 import io.miti.schema.cache.DBCache;
 import io.miti.schema.cache.DBMetadata;
+import io.miti.schema.cache.SnapshotWatcher;
+import io.miti.schema.search.IndexType;
 
 /**
  * This is the main class for the application.
@@ -58,6 +84,13 @@ public final class Schema implements ClipboardOwner
   /** The name of the properties file. */
   public static final String PROPS_FILE_NAME = "schema.prop";
   
+  /**
+   * The value used to set the height of every cell of the name
+   * lists, so the lists never measure the cells themselves, which
+   * for a large schema means rendering every name.
+   */
+  private static final String PROTOTYPE_NAME = "ORDER_LINE_ITEM_DESCRIPTION_CODE";
+  
   /** Whether the right-click popup menu is enabled. */
   private static final boolean ENABLE_POPUP = true;
   
@@ -67,11 +100,14 @@ public final class Schema implements ClipboardOwner
   /** The status bar. */
   private JLabel statusBar = null;
   
+  /** The progress indicator shown while the cache loads. */
+  private JProgressBar progressBar = null;
+  
   /** The window state (position and size). */
   private WindowState windowState = null;
   
-  /** The root of the name of the input data file. */
-  private static final String DATA_FILE_NAME = "tables.xml";
+  /** The name of a file always bundled in the jar. */
+  private static final String JAR_RESOURCE_NAME = "mainicon.png";
   
   /** The GUI components. */
   private JPanel tableSearchPanel = null;
@@ -82,9 +118,21 @@ public final class Schema implements ClipboardOwner
   private JList<String> tableList = null;
   private JList<String> columnList = null;
   private JTextField tfTable = null;
+  private JTextField tfColumn = null;
   private JTable tableTable = null;
   private JTable columnTable = null;
   
+  /** Run the searches typed into the search fields in the background. */
+  private SearchScheduler tableSearch = null;
+  private SearchScheduler columnSearch = null;
+  
+  /**
+   * Measures the text of the names in the lists.  It's set on the
+   * event dispatch thread before the cache starts loading, and used
+   * by the threads that load the cache to find the widest names.
+   */
+  private volatile FontMetrics nameMetrics = null;
+  
   /**
    * Default constructor.
    */
@@ -99,6 +147,8 @@ public final class Schema implements ClipboardOwner
    */
   private void createGUI()
   {
+    StartupTimer.start("Create GUI");
+    
     // Load the properties file
     windowState = WindowState.getInstance();
     
@@ -111,9 +161,6 @@ public final class Schema implements ClipboardOwner
     // Create the empty middle window
     initScreen();
     
-    // Load the data
-    DBCache.getInstance();
-    
     // Set up the status bar
     initStatusBar();
     
@@ -129,6 +176,133 @@ public final class Schema implements ClipboardOwner
        frame.getRootPane().getComponent(1)).getComponent(0)).getComponent(0);
     sp.setDividerLocation(0.33);
     
+    // Give the focus to the text field for the table search
+    tfTable.requestFocusInWindow();
+    StartupTimer.end("Create GUI");
+    
+    // Load the data in the background
+    loadCache();
+  }
+  
+  
+  /**
+   * Load the cache on a background thread, and populate the lists
+   * when it's ready.
+   */
+  private void loadCache()
+  {
+    nameMetrics = getNameMetrics(tableList);
+    new SwingWorker<DBCache, Void>()
+    {
+      /** The widths of the widest table name and column name. */
+      private int[] widths = null;
+      
+      @Override
+      protected DBCache doInBackground()
+      {
+        final DBCache cache = DBCache.getInstance();
+        if (cache.isValid())
+        {
+          widths = measureNames(cache, nameMetrics);
+        }
+        
+        return cache;
+      }
+      
+      @Override
+      protected void done()
+      {
+        String error = null;
+        try
+        {
+          if (!get().isValid())
+          {
+            error = "the schema data could not be read";
+          }
+        }
+        catch (InterruptedException e)
+        {
+          Logger.error(e);
+          error = "the load was interrupted";
+        }
+        catch (ExecutionException e)
+        {
+          Logger.error(e);
+          error = String.valueOf(e.getCause());
+        }
+        
+        cacheLoaded(error, widths);
+      }
+    }.execute();
+  }
+  
+  
+  /**
+   * The cache finished loading, so populate the lists using
+   * whatever was typed in the search fields in the meantime.  If
+   * the load failed, the lists stay empty until the snapshot watcher
+   * loads a good copy.
+   * 
+   * @param error why the load failed, or null if it succeeded
+   * @param widths the widths of the widest table name and column name
+   */
+  private void cacheLoaded(final String error, final int[] widths)
+  {
+    StartupTimer.start("Populate lists");
+    progressBar.setVisible(false);
+    
+    // Update the status bar
+    if (error != null)
+    {
+      statusBar.setText("Unable to load the schema: " + error);
+    }
+    else
+    {
+      String dateStr = DBMetadata.getLastRunData(DBCache.getInstance().getLastRun());
+      statusBar.setText((dateStr == null) ? "Ready" : dateStr);
+      populateLists(widths);
+    }
+    
+    // Startup is done
+    StartupTimer.end("Populate lists");
+    StartupTimer.finish();
+    
+    // Reload the cache whenever the snapshot file changes
+    SnapshotWatcher.start(new CacheListener()
+    {
+      @Override
+      public void cacheChanged(final DBCache cache)
+      {
+        // Measure the names here, on the watcher's thread
+        final int[] widths = measureNames(cache, nameMetrics);
+        javax.swing.SwingUtilities.invokeLater(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            cacheReloaded(cache, widths);
+          }
+        });
+      }
+    });
+  }
+  
+  
+  /**
+   * Populate the lists from the newly loaded cache.
+   * 
+   * @param widths the widths of the widest table name and column name
+   */
+  private void populateLists(final int[] widths)
+  {
+    // Apply the search text to the lists
+    sizeCells(tableList, widths[0]);
+    sizeCells(columnList, widths[1]);
+    tableSearch.cancel();
+    columnSearch.cancel();
+    ((TableListModel) tableList.getModel()).reload(tfTable.getText());
+    ((TableListModel) columnList.getModel()).reload(tfColumn.getText());
+    
     // Select the first table and column
     if (((TableListModel) tableList.getModel()).getSize() > 0)
     {
@@ -138,21 +312,135 @@ public final class Schema implements ClipboardOwner
     {
       columnList.setSelectedIndex(0);
     }
+  }
+  
+  
+  /**
+   * A new cache was swapped in, so rebuild the lists from it,
+   * keeping the current search and selection where possible.
+   * 
+   * @param cache the new cache
+   * @param widths the widths of the widest table name and column name
+   */
+  private void cacheReloaded(final DBCache cache, final int[] widths)
+  {
+    String dateStr = DBMetadata.getLastRunData(cache.getLastRun());
+    statusBar.setText((dateStr == null) ? "Ready" : dateStr);
     
-    // Give the focus to the text field for the table search
-    tfTable.requestFocusInWindow();
+    reloadList(tableList, tfTable.getText(), true, widths[0]);
+    reloadList(columnList, tfColumn.getText(), false, widths[1]);
+  }
+  
+  
+  /**
+   * Rebuild a list from the current cache.
+   * 
+   * @param list the list to rebuild
+   * @param str the search string
+   * @param tablePage whether this is for tables or columns
+   * @param widest the width of the widest name
+   */
+  private void reloadList(final JList<String> list, final String str,
+                          final boolean tablePage, final int widest)
+  {
+    // Save the currently selected row value
+    final int rowIndex = list.getSelectedIndex();
+    final String rowValue = (rowIndex < 0) ? "null" : list.getSelectedValue();
+    
+    // Rebuild the list and restore the selection, dropping any
+    // search still running on the old cache
+    (tablePage ? tableSearch : columnSearch).cancel();
+    sizeCells(list, widest);
+    ((TableListModel) list.getModel()).reload(str);
+    refreshList(list, rowIndex, rowValue);
+    updateTable(tablePage, null);
   }
 
 
+  /**
+   * Fix the size of the cells of a list, so it never renders every
+   * name to find their size.  The height comes from a prototype name,
+   * and the width from the widest name, measured as text.
+   * 
+   * @param list the list
+   * @param widest the width of the widest name the list may show
+   */
+  private static void sizeCells(final JList<String> list, final int widest)
+  {
+    // The renderer adds its border and insets to the text
+    final Component cell = list.getCellRenderer().getListCellRendererComponent(
+                             list, PROTOTYPE_NAME, 0, false, false);
+    final Dimension size = cell.getPreferredSize();
+    final int padding = size.width - getNameMetrics(list).stringWidth(PROTOTYPE_NAME);
+    
+    list.setFixedCellHeight(size.height);
+    list.setFixedCellWidth(padding + widest);
+  }
+  
+  
+  /**
+   * Return the metrics for the text of a list's cells.  This must
+   * be called on the event dispatch thread.
+   * 
+   * @param list the list
+   * @return the font metrics of the list's cells
+   */
+  private static FontMetrics getNameMetrics(final JList<String> list)
+  {
+    final Component cell = list.getCellRenderer().getListCellRendererComponent(
+                             list, PROTOTYPE_NAME, 0, false, false);
+    return cell.getFontMetrics(cell.getFont());
+  }
+  
+  
+  /**
+   * Find the widths of the widest table name and column name in a
+   * cache.  This loops over every name, so it's called on the thread
+   * that loaded the cache rather than the event dispatch thread.
+   * 
+   * @param cache the cache
+   * @param metrics the metrics for the text of the lists' cells
+   * @return the widths of the widest table name and column name
+   */
+  private static int[] measureNames(final DBCache cache,
+                                    final FontMetrics metrics)
+  {
+    return new int[] {getWidest(cache.getTableIterator(), metrics),
+                      getWidest(cache.getColumnIterator(), metrics)};
+  }
+  
+  
+  /**
+   * Return the width of the widest name, measured as text.
+   * 
+   * @param names the names
+   * @param metrics the metrics for the text of the names
+   * @return the width of the widest name
+   */
+  private static int getWidest(final Iterator<String> names,
+                               final FontMetrics metrics)
+  {
+    int widest = 0;
+    while (names.hasNext())
+    {
+      widest = Math.max(widest, metrics.stringWidth(names.next()));
+    }
+    
+    return widest;
+  }
+  
+  
   /**
    * Check how the application is run and save information
    * about the input file.
    */
   private void checkInputFileSource()
   {
-    // See if we can find the input file at the root. If the URL is not null,
-    // we're in a jar file.  If it's null, we're in an IDE.
-    final URL url = getClass().getResource("/" + DATA_FILE_NAME);
+    // See if we can find the icon at the root. If the URL is not null,
+    // we're in a jar file.  If it's null, we're in an IDE.  The icon is
+    // checked rather than the data file, since the snapshot may be
+    // an external file.
+    final URL url = getClass().getResource("/" + JAR_RESOURCE_NAME);
     if (url != null)
     {
       // We're running in a jar file
@@ -203,6 +491,21 @@ public final class Schema implements ClipboardOwner
     {
       frame.setLocation(windowState.getPosition());
     }
+    
+    // When the UI is monitored, Ctrl+Shift+D shows the diagnostics
+    if (UIMonitor.isEnabled())
+    {
+      frame.getRootPane().registerKeyboardAction(new ActionListener()
+      {
+        @Override
+        public void actionPerformed(final ActionEvent e)
+        {
+          showDiagnostics();
+        }
+      }, KeyStroke.getKeyStroke(KeyEvent.VK_D,
+          InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK),
+      JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
   }
   
   
@@ -238,7 +541,7 @@ public final class Schema implements ClipboardOwner
       public void actionPerformed(final ActionEvent e)
       {
         tfTable.setText("");
-        keyChanged("", tablePage);
+        keyChanged("", tablePage, true);
       }
     });
     
@@ -262,7 +565,7 @@ public final class Schema implements ClipboardOwner
   		@Override
   		public void keyReleased(KeyEvent arg0)
   		{
-  		  keyChanged(tfTable.getText(), tablePage);
+  		  keyChanged(tfTable.getText(), tablePage, false);
   		}
   
   		@Override
@@ -282,7 +585,16 @@ public final class Schema implements ClipboardOwner
     
     // Create the list showing the search results
     tableList = new JList<String>();
-    tableList.setModel(new TableListModel(true));
+    final TableListModel tableModel = new TableListModel(true);
+    tableList.setModel(tableModel);
+    tableSearch = new SearchScheduler(tableModel, new SearchListener()
+    {
+      @Override
+      public void searchFinished(final TableSubset subset)
+      {
+        showSubset(subset, tablePage);
+      }
+    }, "Table search");
     tableList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
     tableList.addListSelectionListener(new ListSelectionListener()
     {
@@ -296,6 +608,7 @@ public final class Schema implements ClipboardOwner
       }
     });
     tableList.setCellRenderer(new StripeRenderer());
+    sizeCells(tableList, 0);
     
     if (ENABLE_POPUP)
     {
@@ -320,7 +633,7 @@ public final class Schema implements ClipboardOwner
     for (int i = 0; i < size; ++i)
     {
       // Add the table name to the string
-      String row = (String) tlm.getElementAt(i);
+      String row = tlm.getElementAt(i);
       sb.append(row).append("\r\n");
     }
     
@@ -344,7 +657,7 @@ public final class Schema implements ClipboardOwner
     for (int i = 0; i < size; ++i)
     {
       // Add the table name to the string
-      String row = (String) tlm.getElementAt(i);
+      String row = tlm.getElementAt(i);
       sb.append(row).append("\r\n");
     }
     
@@ -377,9 +690,10 @@ public final class Schema implements ClipboardOwner
       else
       {
         // Update the table with info for the new selection
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(index);
-        ((TableTableModel) tableTable.getModel()).updateKey(item, false);
+        ((TableTableModel) tableTable.getModel()).updateKey(item);
+        ColumnSizer.sizeColumns(tableTable);
       }
     }
     else
@@ -394,9 +708,10 @@ public final class Schema implements ClipboardOwner
       else
       {
         // Update the table with info for the new selection
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             columnList.getModel()).getElementAt(index);
-        ((TableTableModel) columnTable.getModel()).updateKey(item, true);
+        ((TableTableModel) columnTable.getModel()).updateKey(item);
+        ColumnSizer.sizeColumns(columnTable);
       }
     }
   }
@@ -423,36 +738,57 @@ public final class Schema implements ClipboardOwner
   
   /**
    * Handle a key change in the search field for tables
-   * and columns.
+   * and columns.  The search runs in the background, once the
+   * typing pauses, and the list is updated when it finishes.
    * 
    * @param str the new search string
    * @param tablePage whether this is for tables or columns
+   * @param now whether to search without waiting for a pause
    */
-  private void keyChanged(final String str, final boolean tablePage)
+  private void keyChanged(final String str, final boolean tablePage,
+                          final boolean now)
   {
-    if (tablePage)
+    // While the cache is loading, the text stays in the search
+    // field and gets applied once the load finishes; there's nothing
+    // to search if it failed to load
+    if (!DBCache.isLoaded() || !DBCache.getInstance().isValid())
     {
-      // Save the currently selected row value
-      final int rowIndex = tableList.getSelectedIndex();
-      final String rowValue =
-          ((rowIndex < 0) || (tableList.getModel().getSize() == 0)) ? "null" : (String) tableList.getSelectedValue();
-      
-      // Update the list of tables in tableList
-      ((TableListModel) tableList.getModel()).setSubsetKey(str);
-      refreshList(tableList, rowIndex, rowValue);
-      updateTable(tablePage, null);
+      return;
+    }
+    
+    final SearchScheduler scheduler = tablePage ? tableSearch : columnSearch;
+    if (now)
+    {
+      scheduler.searchNow(str);
     }
     else
     {
-      // Save the currently selected row value
-      final int rowIndex = columnList.getSelectedIndex();
-      final String rowValue =
-          ((rowIndex < 0) || (columnList.getModel().getSize() == 0)) ? "null" : (String) columnList.getSelectedValue();
-      
-      // Update the list of columns in columnList
-      ((TableListModel) columnList.getModel()).setSubsetKey(str);
-      refreshList(columnList, rowIndex, rowValue);
+      scheduler.search(str);
+    }
+  }
+  
+  
+  /**
+   * Show the result of a search in the list of tables or columns.
+   * 
+   * @param subset the subset found by the search
+   * @param tablePage whether this is for tables or columns
+   */
+  private void showSubset(final TableSubset subset, final boolean tablePage)
+  {
+    final JList<String> list = tablePage ? tableList : columnList;
+    
+    // Save the currently selected row value
+    final int rowIndex = list.getSelectedIndex();
+    final String rowValue =
+        ((rowIndex < 0) || (list.getModel().getSize() == 0)) ? "null" : list.getSelectedValue();
+    
+    // Update the list of tables or columns
+    if (((TableListModel) list.getModel()).setSubset(subset))
+    {
+      refreshList(list, rowIndex, rowValue);
       updateTable(tablePage, null);
+      UIMonitor.markResults();
     }
   }
   
@@ -538,7 +874,7 @@ public final class Schema implements ClipboardOwner
     
     // Create the top panel - search and clear
     JPanel topPanel = new JPanel(new BorderLayout());
-    final JTextField tf = new JTextField();
+    tfColumn = new JTextField();
     
     // Set up the button to copy list items to the clipboard
 //    final JButton btnPaste = new JButton(Content.getIcon("paste.png"));
@@ -563,8 +899,8 @@ public final class Schema implements ClipboardOwner
       @Override
       public void actionPerformed(ActionEvent e)
       {
-        tf.setText("");
-        keyChanged("", tablePage);
+        tfColumn.setText("");
+        keyChanged("", tablePage, true);
       }
     });
     
@@ -574,7 +910,7 @@ public final class Schema implements ClipboardOwner
 //    topRightPanel.add(btnPaste, BorderLayout.EAST);
     
     // Set up a key listener on the table
-    tf.addKeyListener(new KeyListener()
+    tfColumn.addKeyListener(new KeyListener()
     {
       @Override
       public void keyPressed(KeyEvent arg0)
@@ -584,7 +920,7 @@ public final class Schema implements ClipboardOwner
       @Override
       public void keyReleased(KeyEvent arg0)
       {
-        keyChanged(tf.getText(), tablePage);
+        keyChanged(tfColumn.getText(), tablePage, false);
       }
   
       @Override
@@ -595,16 +931,25 @@ public final class Schema implements ClipboardOwner
   
     JLabel lblSearch = new JLabel("Search: ");
     lblSearch.setDisplayedMnemonic(KeyEvent.VK_S);
-    lblSearch.setLabelFor(tf);
+    lblSearch.setLabelFor(tfColumn);
     
     topPanel.add(lblSearch, BorderLayout.WEST);
-    topPanel.add(tf, BorderLayout.CENTER);
+    topPanel.add(tfColumn, BorderLayout.CENTER);
     topPanel.add(btnClear, BorderLayout.EAST);
     columnSearchPanel.add(topPanel, BorderLayout.NORTH);
     
     // Create the list showing the search results
     columnList = new JList<String>();
-    columnList.setModel(new TableListModel(false));
+    final TableListModel columnModel = new TableListModel(false);
+    columnList.setModel(columnModel);
+    columnSearch = new SearchScheduler(columnModel, new SearchListener()
+    {
+      @Override
+      public void searchFinished(final TableSubset subset)
+      {
+        showSubset(subset, tablePage);
+      }
+    }, "Column search");
     columnList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
     columnList.addListSelectionListener(new ListSelectionListener()
     {
@@ -615,6 +960,7 @@ public final class Schema implements ClipboardOwner
       }
     });
     columnList.setCellRenderer(new StripeRenderer());
+    sizeCells(columnList, 0);
     
     if (ENABLE_POPUP)
     {
@@ -634,10 +980,10 @@ public final class Schema implements ClipboardOwner
     tableResultsPanel = new JPanel(new BorderLayout());
     
     tableTable = new JTable();
-    tableTable.setAutoCreateRowSorter(true);
     tableTable.setModel(new TableTableModel(true));
     tableTable.setDefaultRenderer(Integer.class, new TableTableIntRenderer());
     tableTable.getColumnModel().getColumn(0).setPreferredWidth(3);
+    SortableHeader.install(tableTable);
     JScrollPane sp = new JScrollPane(tableTable);
     tableResultsPanel.add(sp, BorderLayout.CENTER);
   }
@@ -651,10 +997,10 @@ public final class Schema implements ClipboardOwner
     columnResultsPanel = new JPanel(new BorderLayout());
     
     columnTable = new JTable();
-    columnTable.setAutoCreateRowSorter(true);
     columnTable.setModel(new TableTableModel(false));
     columnTable.setDefaultRenderer(Integer.class, new TableTableIntRenderer());
     columnTable.getColumnModel().getColumn(0).setPreferredWidth(3);
+    SortableHeader.install(columnTable);
     JScrollPane sp = new JScrollPane(columnTable);
     columnResultsPanel.add(sp, BorderLayout.CENTER);
   }
@@ -723,20 +1069,39 @@ public final class Schema implements ClipboardOwner
    */
   private void initStatusBar()
   {
-    // Get the text for the date from the input file
-    String dateStr = DBMetadata.getLastRunData();
-    
-    // Instantiate the status bar
-    statusBar = new JLabel();
-    statusBar.setText((dateStr == null) ? "Ready" : dateStr);
+    // Instantiate the status bar; the text is updated once the
+    // cache is loaded
+    statusBar = new JLabel()
+    {
+      /** Default serial ID. */
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      public String getToolTipText(final MouseEvent evt)
+      {
+        // Show the current search cache statistics
+        return SubsetCache.getInstance().getStatistics();
+      }
+    };
+    statusBar.setText("Loading schema...");
+    statusBar.setToolTipText("");
     
-    // Set the color and border
+    // Set the color
     statusBar.setForeground(Color.black);
-    statusBar.setBorder(new CompoundBorder(new EmptyBorder(2, 2, 2, 2),
+    
+    // Show progress while the cache loads
+    progressBar = new JProgressBar();
+    progressBar.setIndeterminate(true);
+    
+    // Put them in a panel with a border
+    JPanel statusPanel = new JPanel(new BorderLayout());
+    statusPanel.add(statusBar, BorderLayout.CENTER);
+    statusPanel.add(progressBar, BorderLayout.EAST);
+    statusPanel.setBorder(new CompoundBorder(new EmptyBorder(2, 2, 2, 2),
                               new SoftBevelBorder(SoftBevelBorder.LOWERED)));
     
     // Add to the content pane
-    frame.getContentPane().add(statusBar, BorderLayout.SOUTH);
+    frame.getContentPane().add(statusPanel, BorderLayout.SOUTH);
   }
   
   
@@ -753,6 +1118,28 @@ public final class Schema implements ClipboardOwner
   }
   
   
+  /**
+   * Show the diagnostics dialog box, with the UI latencies and
+   * stalls, and the search cache statistics.
+   */
+  private void showDiagnostics()
+  {
+    final String report = UIMonitor.getReport();
+    if (report == null)
+    {
+      return;
+    }
+    
+    JTextArea text = new JTextArea(report + Utility.getLineSeparator() +
+                         SubsetCache.getInstance().getStatistics(), 24, 100);
+    text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+    text.setEditable(false);
+    text.setCaretPosition(0);
+    JOptionPane.showMessageDialog(frame, new JScrollPane(text),
+                  "Diagnostics", JOptionPane.INFORMATION_MESSAGE);
+  }
+  
+  
   /**
    * Exit the application.
    */
@@ -761,12 +1148,120 @@ public final class Schema implements ClipboardOwner
     // Store the window state in the properties file
     windowState.update(frame.getBounds());
     windowState.saveToFile(PROPS_FILE_NAME);
+    Logger.info(SubsetCache.getInstance().getStatistics());
+    UIMonitor.logReport();
     
     // Close the application by disposing of the frame
     frame.dispose();
   }
   
   
+  /**
+   * Parse the command-line arguments.  The supported arguments are
+   * --startup-report, to print the startup timings, --ui-monitor, to
+   * report UI stalls and latencies, and the path of an external
+   * snapshot file.
+   * 
+   * @param args arguments passed to the application
+   */
+  private static void parseArgs(final String[] args)
+  {
+    String path = null;
+    boolean monitorUI = false;
+    for (String arg : args)
+    {
+      if (arg.equals("--startup-report"))
+      {
+        StartupTimer.setPrintReport(true);
+      }
+      else if (arg.equals("--ui-monitor"))
+      {
+        monitorUI = true;
+      }
+      else if (arg.startsWith("--"))
+      {
+        System.err.println("Error: unknown option " + arg);
+      }
+      else
+      {
+        path = arg;
+      }
+    }
+    
+    setSnapshotFile(path);
+    setIndexType();
+    setUIMonitor(monitorUI);
+  }
+  
+  
+  /**
+   * Use an external snapshot file, if one is specified on the command
+   * line or in the properties file.  The command line takes priority.
+   * 
+   * @param argPath the snapshot path from the command line, or null
+   */
+  private static void setSnapshotFile(final String argPath)
+  {
+    final String path = (argPath != null) ? argPath :
+                          WindowState.getInstance().getSnapshotFile();
+    if (path == null)
+    {
+      return;
+    }
+    
+    final File file = new File(path);
+    if (file.isFile())
+    {
+      DBCache.setSnapshotFile(file);
+    }
+    else
+    {
+      System.err.println("Error: the snapshot file " + path +
+                         " was not found; using the bundled snapshot");
+    }
+  }
+  
+  
+  /**
+   * Use the kind of search index set in the properties file, if any.
+   */
+  private static void setIndexType()
+  {
+    final String name = WindowState.getInstance().getSearchIndex();
+    if (name == null)
+    {
+      return;
+    }
+    
+    final IndexType type = IndexType.find(name);
+    if (type != null)
+    {
+      DBCache.setIndexType(type);
+    }
+    else
+    {
+      System.err.println("Error: unknown search index " + name +
+                         "; using the default");
+    }
+  }
+  
+  
+  /**
+   * Monitor the UI for stalls, if it's requested on the command line
+   * or a stall threshold is set in the properties file.
+   * 
+   * @param argMonitor whether --ui-monitor is on the command line
+   */
+  private static void setUIMonitor(final boolean argMonitor)
+  {
+    final int threshold = WindowState.getInstance().getStallThreshold();
+    if (argMonitor || (threshold > 0))
+    {
+      UIMonitor.install((threshold > 0) ? threshold : UIMonitor.DEFAULT_THRESHOLD);
+    }
+  }
+  
+  
   /**
    * Entry point to the application.
    * 
@@ -774,14 +1269,24 @@ public final class Schema implements ClipboardOwner
    */
   public static void main(final String[] args)
   {
+    // Record how long the JVM took to get here
+    StartupTimer.recordJvmStart();
+    
     // Make the application Mac-compatible
     Utility.makeMacCompatible();
     
     // Load the properties file data
+    StartupTimer.start("Load properties");
     WindowState.load(PROPS_FILE_NAME);
+    StartupTimer.end("Load properties");
+    
+    // Check the command-line arguments
+    parseArgs(args);
     
     // Initialize the look and feel to the default for this OS
+    StartupTimer.start("Look and feel");
     Utility.initLookAndFeel();
+    StartupTimer.end("Look and feel");
     
     // Schedule a job for the event-dispatching thread:
     // creating and showing this application's GUI.
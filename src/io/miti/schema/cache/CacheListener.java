@@ -0,0 +1,15 @@
+package io.miti.schema.cache;
+
+/**
+ * Interface to be notified when a new cache has been loaded.
+ */
+public interface CacheListener
+{
+  /**
+   * The cache was reloaded and the new instance published.  This
+   * is called on the thread that loaded the cache.
+   *
+   * @param cache the new cache
+   */
+  void cacheChanged(final DBCache cache);
+}
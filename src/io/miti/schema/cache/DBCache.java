@@ -1,185 +1,566 @@
 package io.miti.schema.cache;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import io.miti.schema.dbutil.TableInfo;
+import io.miti.schema.search.FuzzyMatcher;
+import io.miti.schema.search.GlobSearch;
+import io.miti.schema.search.IndexType;
+import io.miti.schema.search.NameIndex;
+import io.miti.schema.search.TokenIndex;
+import io.miti.schema.util.ByteBufferInputStream;
+import io.miti.schema.util.Content;
+import io.miti.schema.util.Logger;
+import io.miti.schema.util.StartupTimer;
+import io.miti.schema.util.Utility;
 
 public final class DBCache
 {
-	/** The one instance of this class. */
-	private static DBCache instance = null;
+	/** The name of the delta file applied on top of a snapshot file. */
+	public static final String DELTA_FILE_NAME = "tables.delta.xml";
 	
-	/** Map of table name to columns in that table. */
-	private Map<String, List<TableInfo>> tables = null;
+	/**
+	 * The current instance of this class, set once it's fully loaded.
+	 * A reload builds a new instance and swaps it in here.
+	 */
+	private static volatile DBCache instance = null;
+	
+	/** The external snapshot file, or null to use the bundled one. */
+	private static volatile File snapshotFile = null;
+	
+	/** The kind of search index to build for the names. */
+	private static volatile IndexType indexType = IndexType.TRIGRAM;
 	
-	/** List of just the table names. */
-	private List<String> tableNames = null;
+	/** The schema data, or null if it failed to load. */
+	private final SchemaStore store;
 	
-	/** Map of column name to tables with that column name. */
-	private Map<String, List<TableInfo>> columns = null;
+	/** The lastrun string from the snapshot (may be null). */
+	private final String lastRun;
+	
+	/** The search indexes over the table names. */
+	private final NameIndexes tableIndexes;
+	
+	/** The search indexes over the column names. */
+	private final NameIndexes columnIndexes;
+	
+	/**
+	 * Constructor.  A cache is never changed once it's built, so
+	 * any number of threads can read it without locking.
+	 * 
+	 * @param data the schema data, or null if it failed to load
+	 * @param lastRunDate the lastrun string from the snapshot
+	 */
+	private DBCache(final SchemaStore data, final String lastRunDate)
+	{
+		this(data, lastRunDate, null);
+	}
 	
-	/** List of just the column names. */
-	private List<String> columnNames = null;
 	
 	/**
-	 * Default constructor.
+	 * Constructor for a cache that replaces another.  The indexes of
+	 * the other cache are kept for any list of names that didn't
+	 * change.  The substring and whole-word indexes are built now, on
+	 * the loading thread, since building them takes long enough that
+	 * a search waiting for them would hold up the next searches and
+	 * a reload; the fuzzy matchers are quick to build when first used.
+	 * 
+	 * @param data the schema data, or null if it failed to load
+	 * @param lastRunDate the lastrun string from the snapshot
+	 * @param previous the cache being replaced, or null
 	 */
-	private DBCache()
+	private DBCache(final SchemaStore data, final String lastRunDate,
+	                final DBCache previous)
 	{
 		super();
+		store = data;
+		lastRun = lastRunDate;
+		
+		if (store == null)
+		{
+			tableIndexes = null;
+			columnIndexes = null;
+			return;
+		}
+		
+		final boolean sameTables = (previous != null) && store.hasSameTableNames(previous.store);
+		final boolean sameColumns = (previous != null) && store.hasSameColumnNames(previous.store);
+		tableIndexes = sameTables ? previous.tableIndexes :
+		                 new NameIndexes(store.getTableNames(), indexType);
+		columnIndexes = sameColumns ? previous.columnIndexes :
+		                  new NameIndexes(store.getColumnNames(), indexType);
+		
+		StartupTimer.start("Build search index");
+		tableIndexes.getIndex();
+		columnIndexes.getIndex();
+		tableIndexes.getWords();
+		columnIndexes.getWords();
+		StartupTimer.end("Build search index");
 	}
 	
 	
 	/**
-	 * Return the one instance of this class.
+	 * Return the current instance of this class.  The first call
+	 * loads the cache; other threads calling in the meantime wait for
+	 * the load to finish.  Once it's loaded, no lock is taken.
 	 * 
-	 * @return the one instance of this class
+	 * @return the current instance of this class
 	 */
 	public static DBCache getInstance()
 	{
-		if (instance == null)
+		DBCache cache = instance;
+		if (cache != null)
 		{
-			instance = new DBCache();
-			instance.initCache();
+			return cache;
 		}
 		
-		return instance;
+		synchronized (DBCache.class)
+		{
+			if (instance == null)
+			{
+				// Only publish the cache once it's fully built
+				StartupTimer.start("Load cache");
+				cache = load();
+				instance = cache;
+				StartupTimer.end("Load cache");
+				StartupTimer.addNote(cache.getSizeDescription());
+			}
+			
+			return instance;
+		}
 	}
 	
 	
 	/**
-	 * Initialize the cache by reading the db info file.
+	 * Load a new cache from the snapshot, and publish it if it
+	 * loaded successfully.  Readers holding the previous instance
+	 * keep using it; new calls to getInstance() get the new one.
+	 * 
+	 * @return the new cache, or null if it failed to load
 	 */
-	private void initCache()
+	public static DBCache reload()
 	{
-		// Load the data from the xml file
-	  tables = new DBFileParser().getTables();
-		if (tables == null)
+		DBCache cache = load();
+		if (!cache.isValid())
+		{
+			return null;
+		}
+		
+		synchronized (DBCache.class)
 		{
-			System.err.println("Error: the table map is null");
+			instance = cache;
 		}
 		
-		// Populate the other variable
-		populateColumns();
-		tableNames = getAllTables();
-		columnNames = getAllColumns();
+		return cache;
 	}
 	
 	
 	/**
-	 * Populate the list of columns with info on the tables their in.
+	 * Return whether the cache has been loaded.  This never blocks.
+	 * 
+	 * @return whether the cache has been loaded
 	 */
-	private void populateColumns()
+	public static boolean isLoaded()
 	{
-	  columns = new HashMap<String, List<TableInfo>>(10);
-	  
-	  // Iterate over the list of tables
-	  for (Entry<String, List<TableInfo>> entry : tables.entrySet())
-	  {
-	    List<TableInfo> cols = entry.getValue();
-	    
-	    // Copy the table info to columns
-	    for (TableInfo info : cols)
-	    {
-	      if (columns.containsKey(info.columnName))
-	      {
-	        columns.get(info.columnName).add(info);
-	      }
-	      else
-	      {
-	        List<TableInfo> list = new ArrayList<TableInfo>(5);
-	        list.add(info);
-	        columns.put(info.columnName, list);
-	      }
-	    }
-	  }
+		return (instance != null);
 	}
 	
 	
 	/**
-	 * Check if it's valid.
+	 * Set the external snapshot file to load.  This must be called
+	 * before the cache is loaded.
+	 * 
+	 * @param file the snapshot file, or null to use the bundled one
 	 */
-	public boolean isValid()
+	public static void setSnapshotFile(final File file)
 	{
-		return ((tables != null) && (columns != null));
+		snapshotFile = file;
 	}
 	
 	
 	/**
-	 * Return all table names.
+	 * Set the kind of search index to build.  This must be called
+	 * before the cache is loaded.
 	 * 
-	 * @return the list of all table names
+	 * @param type the kind of search index
 	 */
-	private List<String> getAllTables()
+	public static void setIndexType(final IndexType type)
 	{
-		if (!isValid())
+		indexType = type;
+	}
+	
+	
+	/**
+	 * Return the external snapshot file.
+	 * 
+	 * @return the snapshot file, or null if using the bundled one
+	 */
+	public static File getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+	
+	
+	/**
+	 * Return the delta file for the snapshot.  Only a snapshot on
+	 * disk can have a delta file.
+	 * 
+	 * @return the delta file, or null if the snapshot is in the jar
+	 */
+	public static File getDeltaFile()
+	{
+		if (snapshotFile != null)
+		{
+			return new File(snapshotFile.getAbsoluteFile().getParentFile(),
+			                DELTA_FILE_NAME);
+		}
+		else if (!Utility.readFilesAsStream())
+		{
+			return new File(Content.getContentPath(DELTA_FILE_NAME));
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Load a cache by reading the db info file, and any delta file
+	 * saved since.  The cache is not published; see getInstance()
+	 * and reload().
+	 * 
+	 * @return the new cache, which isn't valid if loading failed
+	 */
+	public static DBCache load()
+	{
+		DBCache cache = null;
+		long loadedTime = 0L;
+		final File file = snapshotFile;
+		if (file != null)
+		{
+			cache = loadExternal(file);
+			loadedTime = file.lastModified();
+		}
+		else
+		{
+			cache = loadBundled();
+			loadedTime = Math.max(
+			  new File(Content.getContentPath(DBFileParser.XML_FILE_NAME)).lastModified(),
+			  new File(Content.getContentPath(SnapshotFile.BINARY_FILE_NAME)).lastModified());
+		}
+		
+		if (cache == null)
+		{
+			System.err.println("Error: the schema data is null");
+			return new DBCache(null, null);
+		}
+		
+		// Apply a delta file written after the snapshot
+		final File delta = getDeltaFile();
+		if ((delta != null) && delta.isFile() && (delta.lastModified() >= loadedTime))
+		{
+			StartupTimer.start("Apply delta");
+			DBFileParser parser = parseDelta(delta);
+			if (parser != null)
+			{
+				cache = cache.patch(parser);
+			}
+			StartupTimer.end("Apply delta");
+		}
+		
+		return cache;
+	}
+	
+	
+	/**
+	 * Apply a delta file to the current cache, and publish the
+	 * patched copy.  Only the tables in the delta file are touched;
+	 * nothing is re-parsed or re-sorted.
+	 * 
+	 * @param file the delta file
+	 * @return the new cache, or null if the delta failed to load
+	 */
+	public static DBCache applyDelta(final File file)
+	{
+		DBFileParser parser = parseDelta(file);
+		if (parser == null)
+		{
+			return null;
+		}
+		
+		synchronized (DBCache.class)
+		{
+			if ((instance == null) || !instance.isValid())
+			{
+				return null;
+			}
+			
+			// Readers of the current cache are unaffected
+			DBCache cache = instance.patch(parser);
+			instance = cache;
+			return cache;
+		}
+	}
+	
+	
+	/**
+	 * Parse a delta file.  The file has the same format as the
+	 * snapshot, with a root element of delta:
+	 * <pre>
+	 *   &lt;delta&gt;
+	 *     &lt;lastrun&gt;...&lt;/lastrun&gt;
+	 *     &lt;drop id="OLD_TABLE"/&gt;
+	 *     &lt;table id="NEW_OR_CHANGED_TABLE"&gt;
+	 *       &lt;col order="1" type="int4(10)" nullable="0" pk="1"&gt;id&lt;/col&gt;
+	 *     &lt;/table&gt;
+	 *   &lt;/delta&gt;
+	 * </pre>
+	 * Each table element adds the table, or replaces all of its
+	 * columns if it already exists.
+	 * 
+	 * @param file the delta file
+	 * @return the parser holding the delta, or null on error
+	 */
+	private static DBFileParser parseDelta(final File file)
+	{
+		DBFileParser parser = new DBFileParser();
+		try
+		{
+			if (parser.parse(new ByteBufferInputStream(SnapshotFile.map(file))))
+			{
+				return parser;
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Return a copy of this cache patched with a delta.
+	 * 
+	 * @param delta the parsed delta file
+	 * @return the patched cache
+	 */
+	private DBCache patch(final DBFileParser delta)
+	{
+		return new DBCache(store.patch(delta.getTables(), delta.getDroppedTables()),
+		                   (delta.getLastRun() != null) ? delta.getLastRun() : lastRun,
+		                   this);
+	}
+	
+	
+	/**
+	 * Load the snapshot bundled with the application.
+	 * 
+	 * @return the cache, or null on error
+	 */
+	private static DBCache loadBundled()
+	{
+		// Use the compiled snapshot if there is one, since it needs
+		// no parsing or sorting
+		StartupTimer.start("Read compiled snapshot");
+		SnapshotFile snapshot = new SnapshotFile();
+		final boolean loaded = snapshot.load();
+		StartupTimer.end("Read compiled snapshot");
+		if (loaded)
+		{
+			return fromSnapshot(snapshot);
+		}
+		
+		// Load the data from the xml file
+		ByteBuffer buffer = null;
+		try
+		{
+			buffer = SnapshotFile.openBundled(DBFileParser.XML_FILE_NAME);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		
+		return ((buffer == null) ? null : parseXml(buffer));
+	}
+	
+	
+	/**
+	 * Load an external snapshot file, either compiled or XML.  The
+	 * file is memory-mapped rather than read through a stream.
+	 * 
+	 * @param file the snapshot file
+	 * @return the cache, or null on error
+	 */
+	private static DBCache loadExternal(final File file)
+	{
+		ByteBuffer buffer = null;
+		try
+		{
+			buffer = SnapshotFile.map(file);
+		}
+		catch (IOException e)
 		{
+			e.printStackTrace();
 			return null;
 		}
 		
-		List<String> list = new ArrayList<String>(20);
-		for (Entry<String, List<TableInfo>> entry : tables.entrySet())
+		if (!SnapshotFile.isSnapshot(buffer))
+		{
+			return parseXml(buffer);
+		}
+		
+		StartupTimer.start("Read compiled snapshot");
+		SnapshotFile snapshot = new SnapshotFile();
+		final boolean loaded = snapshot.read(buffer);
+		StartupTimer.end("Read compiled snapshot");
+		return (loaded ? fromSnapshot(snapshot) : null);
+	}
+	
+	
+	/**
+	 * Parse an XML snapshot, on several threads if it's large.
+	 * 
+	 * @param buffer the buffer holding the XML
+	 * @return the cache, or null on error
+	 */
+	private static DBCache parseXml(final ByteBuffer buffer)
+	{
+		StartupTimer.start("Parse XML");
+		DBFileParser parser = ParallelFileParser.parse(buffer);
+		StartupTimer.end("Parse XML");
+		return ((parser == null) ? null : fromParser(parser));
+	}
+	
+	
+	/**
+	 * Create a cache from a compiled snapshot, which is already sorted.
+	 * 
+	 * @param snapshot the snapshot
+	 * @return the cache
+	 */
+	private static DBCache fromSnapshot(final SnapshotFile snapshot)
+	{
+		return new DBCache(snapshot.getStore(), snapshot.getLastRun());
+	}
+	
+	
+	/**
+	 * Create a cache from the data read by the XML parser, copying
+	 * it into a store.
+	 * 
+	 * @param parser the parser
+	 * @return the cache
+	 */
+	private static DBCache fromParser(final DBFileParser parser)
+	{
+		final StringPool pool = parser.getStringPool();
+		Logger.info("Snapshot strings: " + pool.getSize() + " distinct, " +
+		            pool.getHits() + " shared, about " +
+		            Utility.getBytesString(pool.getBytesSaved()) + " saved");
+		
+		StartupTimer.start("Build store");
+		SchemaStore data = SchemaStore.build(parser.getTables(),
+		                                     parser.getColumns().keySet());
+		StartupTimer.end("Build store");
+		return new DBCache(data, parser.getLastRun());
+	}
+	
+	
+	/**
+	 * Describe the size of the cache.
+	 * 
+	 * @return the number of tables, column names and columns
+	 */
+	private String getSizeDescription()
+	{
+		if (!isValid())
 		{
-			list.add(entry.getKey());
+			return "Snapshot: not loaded";
 		}
 		
-		Collections.sort(list);
-		return list;
+		return String.format("Snapshot: %,d tables, %,d column names, %,d columns (%s, %s search index %s)",
+		                     store.getTableCount(), store.getColumnCount(),
+		                     store.getRecordCount(),
+		                     Utility.getBytesString(store.getArrayBytes()),
+		                     indexType.name().toLowerCase(),
+		                     Utility.getBytesString(tableIndexes.getBytes() +
+		                                            columnIndexes.getBytes()));
+	}
+	
+	
+	/**
+	 * Return the lastrun string from the snapshot, which is when
+	 * the snapshot was taken.
+	 * 
+	 * @return the lastrun string, or null if there isn't one
+	 */
+	public String getLastRun()
+	{
+		return lastRun;
+	}
+	
+	
+	/**
+	 * Check if it's valid.
+	 */
+	public boolean isValid()
+	{
+		return (store != null);
 	}
 	
 	
 	/**
-	 * Return the column data for the specified table.
+	 * Return the column data for the specified table.  The list
+	 * is read-only.
 	 * 
 	 * @param table the table name
 	 * @return the data for that table
 	 */
 	public List<TableInfo> getTableInfo(final String table)
 	{
-	  List<TableInfo> list = tables.get(table);
-	  return list;
+	  return store.getTableInfo(table);
+	}
+	
+	
+	/**
+	 * Return the tables/column data matching on column name.  The
+	 * list is read-only.
+	 * 
+	 * @param column the column name
+	 * @return the tables with their data for that column
+	 */
+	public List<TableInfo> getColumnInfo(final String column)
+	{
+	  return store.getColumnInfo(column);
 	}
 	
 	
 	/**
-	 * Return a list of all columns.
+	 * Return the records for the columns in a table.
 	 * 
-	 * @return all column names
+	 * @param table the table name
+	 * @return the records, or null if there's no such table
 	 */
-	private List<String> getAllColumns()
+	public RecordSet getTableRecords(final String table)
 	{
-    if (!isValid())
-    {
-      return null;
-    }
-    
-    List<String> list = new ArrayList<String>(20);
-    for (Entry<String, List<TableInfo>> entry : columns.entrySet())
-    {
-      list.add(entry.getKey());
-    }
-    
-    Collections.sort(list);
-    return list;
+	  return store.getTableRecords(table);
 	}
 	
 	
 	/**
-	 * Return the tables/column data matching on column name.
+	 * Return the records for the tables with a column name.
 	 * 
 	 * @param column the column name
-	 * @return the tables with their data for that column
+	 * @return the records, or null if there's no such column
 	 */
-	public List<TableInfo> getColumnInfo(final String column)
+	public RecordSet getColumnRecords(final String column)
 	{
-	  List<TableInfo> list = columns.get(column);
-	  return list;
+	  return store.getColumnRecords(column);
 	}
 	
 	
@@ -190,7 +571,7 @@ public final class DBCache
 	 */
 	public Iterator<String> getTableIterator()
 	{
-	  return tableNames.iterator();
+	  return store.getTableNames().iterator();
 	}
   
   
@@ -201,7 +582,7 @@ public final class DBCache
    */
   public Iterator<String> getColumnIterator()
   {
-    return columnNames.iterator();
+    return store.getColumnNames().iterator();
   }
   
   
@@ -211,9 +592,9 @@ public final class DBCache
    * @param index the index to retrieve
    * @return the table name
    */
-  public String getTable(Integer index)
+  public String getTable(final int index)
   {
-    return tableNames.get(index.intValue());
+    return store.getTableName(index);
   }
   
   
@@ -223,8 +604,118 @@ public final class DBCache
    * @param index the index to retrieve
    * @return the column name
    */
-  public String getColumn(Integer index)
+  public String getColumn(final int index)
+  {
+    return store.getColumnName(index);
+  }
+  
+  
+  /**
+   * Return the search index over the table names.
+   * 
+   * @return the table name index
+   */
+  public NameIndex getTableIndex()
+  {
+    return tableIndexes.getIndex();
+  }
+  
+  
+  /**
+   * Return the search index over the column names.
+   * 
+   * @return the column name index
+   */
+  public NameIndex getColumnIndex()
+  {
+    return columnIndexes.getIndex();
+  }
+  
+  
+  /**
+   * Return the whole-word index over the table names.
+   * 
+   * @return the table name word index
+   */
+  public TokenIndex getTableWords()
+  {
+    return tableIndexes.getWords();
+  }
+  
+  
+  /**
+   * Return the whole-word index over the column names.
+   * 
+   * @return the column name word index
+   */
+  public TokenIndex getColumnWords()
+  {
+    return columnIndexes.getWords();
+  }
+  
+  
+  /**
+   * Return the fuzzy matcher for the table names.
+   * 
+   * @return the table name matcher
+   */
+  public FuzzyMatcher getTableMatcher()
+  {
+    return tableIndexes.getMatcher();
+  }
+  
+  
+  /**
+   * Return the fuzzy matcher for the column names.
+   * 
+   * @return the column name matcher
+   */
+  public FuzzyMatcher getColumnMatcher()
+  {
+    return columnIndexes.getMatcher();
+  }
+  
+  
+  /**
+   * Return the glob pattern search over the table names.
+   * 
+   * @return the table name glob search
+   */
+  public GlobSearch getTableGlobs()
+  {
+    return tableIndexes.getGlobs();
+  }
+  
+  
+  /**
+   * Return the glob pattern search over the column names.
+   * 
+   * @return the column name glob search
+   */
+  public GlobSearch getColumnGlobs()
+  {
+    return columnIndexes.getGlobs();
+  }
+  
+  
+  /**
+   * Return the number of tables.
+   * 
+   * @return the number of tables
+   */
+  public int getTableCount()
+  {
+    return store.getTableCount();
+  }
+  
+  
+  /**
+   * Return the number of column names.
+   * 
+   * @return the number of column names
+   */
+  public int getColumnCount()
   {
-    return columnNames.get(index.intValue());
+    return store.getColumnCount();
   }
 }
@@ -8,30 +8,64 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import io.miti.schema.dbutil.TableInfo;
 import io.miti.schema.util.Content;
 
-public final class DBFileParser extends DefaultHandler
+/**
+ * Parse the database info file using a pull (StAX) parser.  The map
+ * of tables and the map of columns are both built in a single pass
+ * over the file.  The same parser reads delta files, which can also
+ * list dropped tables (see DBCache.applyDelta()).
+ */
+public final class DBFileParser
 {
-  private int order = 0;
-  private String tableName = null;
-  private String colType = null;
-  private boolean isNullable = false;
-  private boolean isPK = false;
-  private TableInfo info = null;
-	private boolean inColSection = false;
-	private boolean inLastRunSection = false;
+	/** The name of the database info file. */
+	public static final String XML_FILE_NAME = "tables.xml";
+	
+	/** The initial size of the text buffer. */
+	private static final int INITIAL_BUFFER_SIZE = 64;
+	
+	/** The text of the current element, reused across elements. */
+	private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+	
+	/** The number of characters used in the buffer. */
+	private int bufferLen = 0;
+	
+	/** Whether we're collecting the text of the current element. */
+	private boolean inText = false;
+	
+	/** The attributes of the current column. */
+	private int order = 0;
+	private String colType = null;
+	private boolean isNullable = false;
+	private boolean isPK = false;
 	
+	/** The name of the current table. */
+	private String tableName = null;
+	
+	/** The list of columns for the current table, once it has one. */
+	private List<TableInfo> tableCols = null;
+	
+	/** Map of table name to the columns in that table. */
 	private Map<String, List<TableInfo>> map = null;
 	
+	/** Map of column name to the tables with that column. */
+	private Map<String, List<TableInfo>> columns = null;
+	
+	/** The names of the tables dropped by a delta file. */
+	private List<String> dropped = null;
+	
+	/** The lastrun string from the file (may be null). */
+	private String lastRun = null;
+	
+	/** Shares the column names and types between TableInfo objects. */
+	private StringPool pool = null;
+	
 	
 	/**
 	 * Default constructor.
@@ -42,139 +76,383 @@ public final class DBFileParser extends DefaultHandler
 	}
 	
 	
-	@Override
-	public void startElement(String uri, String localName, String qName,
-			Attributes attributes) throws SAXException
+	/**
+	 * Parse the input file.
+	 *
+	 * @return whether the file was parsed successfully
+	 */
+	public boolean parse()
 	{
-		super.startElement(uri, localName, qName, attributes);
-		
-		if (qName.equals("table"))
+		// Get the input file stream
+		final InputStream is = Content.getFileStream(XML_FILE_NAME);
+		if (is == null)
 		{
-		  tableName = attributes.getValue("id").toUpperCase();
+			return false;
 		}
-		else if (qName.equals("col"))
+	
+		return parse(is);
+	}
+	
+	
+	/**
+	 * Parse the snapshot in the input stream.  The stream is closed
+	 * when parsing completes.
+	 *
+	 * @param is the input stream
+	 * @return whether the stream was parsed successfully
+	 */
+	public boolean parse(final InputStream is)
+	{
+		// Instantiate the maps that will hold the data from the file
+		map = new HashMap<String, List<TableInfo>>(64);
+		columns = new HashMap<String, List<TableInfo>>(256);
+		dropped = new ArrayList<String>(4);
+		pool = new StringPool();
+	
+		XMLStreamReader reader = null;
+		try
 		{
-		  colType = attributes.getValue("type");
-		  isNullable = attributes.getValue("nullable").equals("1");
-		  isPK = attributes.getValue("pk").equals("1");
-		  final String orderStr = attributes.getValue("order");
-		  order = Integer.parseInt(orderStr);
-			inColSection = true;
+			// Let the parser hand us text in whatever chunks it likes;
+			// we accumulate it ourselves
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			reader = factory.createXMLStreamReader(is);
+	
+			while (reader.hasNext())
+			{
+				switch (reader.next())
+				{
+					case XMLStreamConstants.START_ELEMENT:
+						startElement(reader);
+						break;
+	
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+						if (inText)
+						{
+							appendText(reader);
+						}
+						break;
+	
+					case XMLStreamConstants.END_ELEMENT:
+						endElement(reader.getLocalName());
+						break;
+	
+					default:
+						break;
+				}
+			}
 		}
-		else if (qName.equals("lastrun"))
+		catch (XMLStreamException e)
 		{
-		  inLastRunSection = true;
+			e.printStackTrace();
+			map = null;
+			columns = null;
+			return false;
+		}
+		finally
+		{
+			close(reader, is);
 		}
+	
+		return true;
 	}
 	
 	
-	@Override
-	public void endElement(String uri, String localName, String qName)
-			throws SAXException
+	/**
+	 * Handle the start of an element.
+	 *
+	 * @param reader the stream reader, positioned on the start element
+	 */
+	private void startElement(final XMLStreamReader reader)
 	{
-		super.endElement(uri, localName, qName);
-		
+		final String qName = reader.getLocalName();
 		if (qName.equals("col"))
 		{
-		  if (map.containsKey(tableName))
-		  {
-		    map.get(tableName).add(info);
-		  }
-		  else
-		  {
-		    List<TableInfo> cols = new ArrayList<TableInfo>(5);
-		    cols.add(info);
-		    map.put(tableName, cols);
-		  }
+			colType = pool.intern(reader.getAttributeValue(null, "type"));
+			isNullable = "1".equals(reader.getAttributeValue(null, "nullable"));
+			isPK = "1".equals(reader.getAttributeValue(null, "pk"));
+			order = Integer.parseInt(reader.getAttributeValue(null, "order"));
+			startText();
+		}
+		else if (qName.equals("table"))
+		{
+			// The table is added to the map with its first column, so
+			// a table with no columns is left out
+			tableName = reader.getAttributeValue(null, "id").toUpperCase();
+			tableCols = null;
+		}
+		else if (qName.equals("lastrun"))
+		{
+			startText();
+		}
+		else if (qName.equals("drop"))
+		{
+			dropped.add(reader.getAttributeValue(null, "id").toUpperCase());
 		}
 	}
 	
 	
-	@Override
-	public void characters(char[] ch, int start, int length)
-			throws SAXException
+	/**
+	 * Handle the end of an element.
+	 *
+	 * @param qName the element name
+	 */
+	private void endElement(final String qName)
 	{
-		super.characters(ch, start, length);
-		String str = new String(ch, start, length).toUpperCase();
-		
-		if (inColSection)
+		if (qName.equals("col"))
 		{
-		  info = new TableInfo();
-		  info.order = order;
-		  info.columnName = str;
-		  info.tableName = tableName;
-		  info.isNullable = isNullable;
-		  info.isPK = isPK;
-		  info.columnType = colType;
-			inColSection = false;
+			TableInfo info = new TableInfo();
+			info.order = order;
+			info.columnName = getUpperText();
+			info.tableName = tableName;
+			info.isNullable = isNullable;
+			info.isPK = isPK;
+			info.columnType = colType;
+			inText = false;
+	
+			// Save the column under both its table and its name
+			if (tableCols == null)
+			{
+				tableCols = map.get(tableName);
+				if (tableCols == null)
+				{
+					tableCols = new ArrayList<TableInfo>(8);
+					map.put(tableName, tableCols);
+				}
+			}
+			tableCols.add(info);
+			List<TableInfo> tables = columns.get(info.columnName);
+			if (tables == null)
+			{
+				tables = new ArrayList<TableInfo>(4);
+				columns.put(info.columnName, tables);
+			}
+			tables.add(info);
 		}
-		else if (inLastRunSection)
+		else if (qName.equals("lastrun"))
+		{
+			lastRun = getUpperText();
+			inText = false;
+		}
+		else if (qName.equals("table"))
 		{
-		  DBMetadata.lastRun = str;
-		  inLastRunSection = false;
+			tableName = null;
+			tableCols = null;
 		}
 	}
 	
 	
-	@SuppressWarnings("unused")
-	private void printMap()
+	/**
+	 * Start collecting the text of an element.
+	 */
+	private void startText()
 	{
-		for (Entry<String, List<TableInfo>> entry : map.entrySet())
+		bufferLen = 0;
+		inText = true;
+	}
+	
+	
+	/**
+	 * Append the current text event to the buffer.  The parser may
+	 * split the text of an element across several events.
+	 *
+	 * @param reader the stream reader, positioned on a text event
+	 */
+	private void appendText(final XMLStreamReader reader)
+	{
+		final int len = reader.getTextLength();
+		if (bufferLen + len > buffer.length)
 		{
-			String key = entry.getKey();
-			System.out.println("Table is " + key);
-			List<TableInfo> cols = entry.getValue();
-			for (TableInfo col : cols)
+			char[] larger = new char[Math.max(buffer.length * 2, bufferLen + len)];
+			System.arraycopy(buffer, 0, larger, 0, bufferLen);
+			buffer = larger;
+		}
+	
+		System.arraycopy(reader.getTextCharacters(), reader.getTextStart(),
+		                 buffer, bufferLen, len);
+		bufferLen += len;
+	}
+	
+	
+	/**
+	 * Return the collected text in upper case, from the string pool.
+	 * Plain ASCII text is converted in the buffer, so no string is
+	 * created unless the text is new to the pool.
+	 *
+	 * @return the collected text in upper case
+	 */
+	private String getUpperText()
+	{
+		for (int i = 0; i < bufferLen; ++i)
+		{
+			final char ch = buffer[i];
+			if (ch >= 0x80)
 			{
-			  System.out.println(col.toString());
+				// Let String handle the locale-sensitive conversion
+				return pool.intern(new String(buffer, 0, bufferLen).toUpperCase());
+			}
+			else if ((ch >= 'a') && (ch <= 'z'))
+			{
+				buffer[i] = (char) (ch - ('a' - 'A'));
 			}
 		}
+	
+		return pool.intern(buffer, 0, bufferLen);
 	}
 	
 	
-	public Map<String, List<TableInfo>> getTables()
+	/**
+	 * Close the reader and the input stream.
+	 *
+	 * @param reader the stream reader
+	 * @param is the input stream
+	 */
+	private static void close(final XMLStreamReader reader,
+	                          final InputStream is)
 	{
-		// Get the input file stream
-		final InputStream is = Content.getFileStream("tables.xml");
-		
-		// Instantiate the map that will hold the data from the file
-		map = new HashMap<String, List<TableInfo>>(20);
-		
-		// Parse the file
-		SAXParserFactory factory = SAXParserFactory.newInstance();
-		SAXParser parser = null;
+		if (reader != null)
+		{
+			try
+			{
+				reader.close();
+			}
+			catch (XMLStreamException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	
 		try
 		{
-			// Parse the file using this instance of this class
-			parser = factory.newSAXParser();
-			parser.parse(is, this);
+			is.close();
 		}
-		catch (ParserConfigurationException e)
+		catch (IOException e)
 		{
 			e.printStackTrace();
-			return null;
 		}
-		catch (SAXException e)
+	}
+	
+	
+	/**
+	 * Merge the results of another parser into this one.  This is
+	 * used to combine the chunks of a file parsed in parallel.  Each
+	 * chunk has its own string pool, so the other parser's columns
+	 * are switched to this parser's copy of each column name.
+	 *
+	 * @param other the other parser
+	 */
+	public void merge(final DBFileParser other)
+	{
+		for (Entry<String, List<TableInfo>> entry : other.map.entrySet())
 		{
-			e.printStackTrace();
-			return null;
+			List<TableInfo> cols = map.get(entry.getKey());
+			if (cols == null)
+			{
+				map.put(entry.getKey(), entry.getValue());
+			}
+			else
+			{
+				cols.addAll(entry.getValue());
+			}
 		}
-		catch (IOException e)
+	
+		for (Entry<String, List<TableInfo>> entry : other.columns.entrySet())
 		{
-			e.printStackTrace();
-			return null;
+			List<TableInfo> tables = columns.get(entry.getKey());
+			if (tables == null)
+			{
+				columns.put(entry.getKey(), entry.getValue());
+			}
+			else
+			{
+				final String name = tables.get(0).columnName;
+				for (TableInfo info : entry.getValue())
+				{
+					info.columnName = name;
+				}
+	
+				tables.addAll(entry.getValue());
+			}
 		}
-		
-		// Close the input stream
-		try
+	
+		dropped.addAll(other.dropped);
+		pool.addCounts(other.pool);
+		if (lastRun == null)
 		{
-			is.close();
+			lastRun = other.lastRun;
 		}
-		catch (IOException e)
+	}
+	
+	
+	@SuppressWarnings("unused")
+	private void printMap()
+	{
+		for (Entry<String, List<TableInfo>> entry : map.entrySet())
 		{
-			e.printStackTrace();
+			String key = entry.getKey();
+			System.out.println("Table is " + key);
+			List<TableInfo> cols = entry.getValue();
+			for (TableInfo col : cols)
+			{
+				System.out.println(col.toString());
+			}
 		}
-		
+	}
+	
+	
+	/**
+	 * Return the pool of strings shared by the parsed columns.
+	 *
+	 * @return the string pool, or null if nothing has been parsed
+	 */
+	public StringPool getStringPool()
+	{
+		return pool;
+	}
+	
+	
+	/**
+	 * Return the map of table name to the columns in that table.
+	 *
+	 * @return the map of tables, or null if the parse failed
+	 */
+	public Map<String, List<TableInfo>> getTables()
+	{
 		return map;
 	}
+	
+	
+	/**
+	 * Return the lastrun string from the file.
+	 *
+	 * @return the lastrun string, or null if there isn't one
+	 */
+	public String getLastRun()
+	{
+		return lastRun;
+	}
+	
+	
+	/**
+	 * Return the names of the tables dropped by a delta file.
+	 *
+	 * @return the dropped table names
+	 */
+	public List<String> getDroppedTables()
+	{
+		return dropped;
+	}
+	
+	
+	/**
+	 * Return the map of column name to the tables with that column.
+	 *
+	 * @return the map of columns, or null if the parse failed
+	 */
+	public Map<String, List<TableInfo>> getColumns()
+	{
+		return columns;
+	}
 }
@@ -5,16 +5,13 @@ import java.util.Date;
 
 public final class DBMetadata
 {
-  /** The lastrun string from the input file. */
-  public static String lastRun = null;
-  
-  
   /**
    * Return the lastrun date as a date string.
    * 
+   * @param lastRun the lastrun string from the input file
    * @return the lastrun date as a date string
    */
-  public static String getLastRunData()
+  public static String getLastRunData(final String lastRun)
   {
     if ((lastRun == null) || (lastRun.length() < 1))
     {
@@ -0,0 +1,123 @@
+package io.miti.schema.cache;
+
+import java.util.List;
+
+import io.miti.schema.search.FuzzyMatcher;
+import io.miti.schema.search.GlobSearch;
+import io.miti.schema.search.IndexType;
+import io.miti.schema.search.NameIndex;
+import io.miti.schema.search.TokenIndex;
+
+/**
+ * The search indexes over one list of names (the table names or the
+ * column names).  Each index is built the first time it's asked for,
+ * and a cache patched without changing the names keeps the indexes
+ * it has.  Threads asking for an index while it's being built wait
+ * for it, so the slow ones are asked for on the loading thread.
+ */
+final class NameIndexes
+{
+  /** The names, sorted, by ID. */
+  private final List<String> names;
+
+  /** The kind of substring index to build. */
+  private final IndexType type;
+
+  /** The glob pattern search, which needs no index of its own. */
+  private final GlobSearch globs;
+
+  /** The substring index, or null until it's built. */
+  private NameIndex index = null;
+
+  /** The whole-word index, or null until it's built. */
+  private TokenIndex words = null;
+
+  /** The fuzzy matcher, or null until it's built. */
+  private FuzzyMatcher matcher = null;
+
+
+  /**
+   * Constructor.  The list must not change.
+   *
+   * @param nameList the names, sorted, by ID
+   * @param indexType the kind of substring index to build
+   */
+  NameIndexes(final List<String> nameList, final IndexType indexType)
+  {
+    names = nameList;
+    type = indexType;
+    globs = new GlobSearch(names);
+  }
+
+
+  /**
+   * Return the substring index, building it if needed.
+   *
+   * @return the substring index
+   */
+  synchronized NameIndex getIndex()
+  {
+    if (index == null)
+    {
+      index = type.create(names);
+    }
+
+    return index;
+  }
+
+
+  /**
+   * Return the whole-word index, building it if needed.
+   *
+   * @return the whole-word index
+   */
+  synchronized TokenIndex getWords()
+  {
+    if (words == null)
+    {
+      words = new TokenIndex(names);
+    }
+
+    return words;
+  }
+
+
+  /**
+   * Return the fuzzy matcher, building it if needed.
+   *
+   * @return the fuzzy matcher
+   */
+  synchronized FuzzyMatcher getMatcher()
+  {
+    if (matcher == null)
+    {
+      matcher = new FuzzyMatcher(names);
+    }
+
+    return matcher;
+  }
+
+
+  /**
+   * Return the glob pattern search.
+   *
+   * @return the glob pattern search
+   */
+  GlobSearch getGlobs()
+  {
+    return globs;
+  }
+
+
+  /**
+   * Estimate the heap size of the indexes built so far.
+   *
+   * @return the estimated size, in bytes
+   */
+  synchronized long getBytes()
+  {
+    return (((index == null) ? 0L : index.getBytes()) +
+            ((words == null) ? 0L : words.getBytes()) +
+            ((matcher == null) ? 0L : matcher.getBytes()));
+  }
+}
@@ -0,0 +1,384 @@
+package io.miti.schema.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import io.miti.schema.util.ByteBufferInputStream;
+
+/**
+ * Parse a large XML snapshot on several threads.  The file is split
+ * into chunks at &lt;table&gt; tags, each chunk is wrapped in its own
+ * &lt;tables&gt; element and parsed separately, and the results are
+ * merged in file order, so the result is the same as parsing the
+ * whole file on one thread.  Small files, and files that can't be
+ * split safely, are parsed on the calling thread.
+ */
+public final class ParallelFileParser
+{
+  /** Files smaller than this are parsed on one thread. */
+  private static final int MIN_PARALLEL_SIZE = 8 * 1024 * 1024;
+
+  /** The smallest chunk worth parsing on its own thread. */
+  private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+  /** The number of chunks per thread, so busy threads can catch up. */
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  /** The ASCII character set, used for the tags we search for. */
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  /** The tag that starts a table. */
+  private static final byte[] TABLE_TAG = "<table".getBytes(ASCII);
+
+  /** The tag that ends the file. */
+  private static final byte[] END_TAG = "</tables>".getBytes(ASCII);
+
+  /** The tag that starts the document in each chunk after the first. */
+  private static final byte[] START_TAG = "<tables>".getBytes(ASCII);
+
+  /** The buffer holding the file. */
+  private ByteBuffer buffer = null;
+
+  /** The offsets of the chunk boundaries; the last is the end tag. */
+  private int[] bounds = null;
+
+
+  /**
+   * Constructor.
+   *
+   * @param buf the buffer holding the file
+   */
+  private ParallelFileParser(final ByteBuffer buf)
+  {
+    buffer = buf;
+  }
+
+
+  /**
+   * Parse the snapshot in the buffer, using one thread per processor.
+   *
+   * @param buf the buffer holding the file
+   * @return the parser holding the results, or null on error
+   */
+  public static DBFileParser parse(final ByteBuffer buf)
+  {
+    return parse(buf, Runtime.getRuntime().availableProcessors());
+  }
+
+
+  /**
+   * Parse the snapshot in the buffer, using up to the specified
+   * number of threads.
+   *
+   * @param buf the buffer holding the file
+   * @param parallelism the maximum number of threads to use
+   * @return the parser holding the results, or null on error
+   */
+  public static DBFileParser parse(final ByteBuffer buf, final int parallelism)
+  {
+    if ((parallelism > 1) && (buf.remaining() >= MIN_PARALLEL_SIZE))
+    {
+      ParallelFileParser pfp = new ParallelFileParser(buf);
+      if (pfp.split(parallelism))
+      {
+        DBFileParser parser = pfp.parseChunks(parallelism);
+        if (parser != null)
+        {
+          return parser;
+        }
+      }
+    }
+
+    // Parse it all on this thread
+    DBFileParser parser = new DBFileParser();
+    return (parser.parse(new ByteBufferInputStream(buf)) ? parser : null);
+  }
+
+
+  /**
+   * Find the chunk boundaries.  Each one is the start of a table tag.
+   *
+   * @param parallelism the number of threads to use
+   * @return whether the file can be split
+   */
+  private boolean split(final int parallelism)
+  {
+    // The chunks after the first are read as UTF-8, so the whole
+    // file has to be
+    if (!isUtf8())
+    {
+      return false;
+    }
+
+    final int start = buffer.position();
+    final int first = findTable(start, buffer.limit());
+    final int end = findLast(END_TAG);
+    if ((first < 0) || (end < first))
+    {
+      return false;
+    }
+
+    final int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                                   (end - first) / (parallelism * CHUNKS_PER_THREAD));
+
+    // The first chunk also holds the header (and the lastrun element)
+    List<Integer> list = new ArrayList<Integer>(parallelism * CHUNKS_PER_THREAD + 2);
+    list.add(Integer.valueOf(start));
+    int next = first + chunkSize;
+    while (next < end)
+    {
+      final int tag = findTable(next, end);
+      if (tag < 0)
+      {
+        break;
+      }
+
+      list.add(Integer.valueOf(tag));
+      next = tag + chunkSize;
+    }
+
+    if (list.size() < 2)
+    {
+      return false;
+    }
+
+    list.add(Integer.valueOf(end));
+    bounds = new int[list.size()];
+    for (int i = 0; i < bounds.length; ++i)
+    {
+      bounds[i] = list.get(i).intValue();
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Parse the chunks on a fork-join pool, and merge the results.
+   *
+   * @param parallelism the number of threads to use
+   * @return the merged parser, or null if a chunk failed to parse
+   */
+  private DBFileParser parseChunks(final int parallelism)
+  {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try
+    {
+      return pool.invoke(new ChunkTask(0, bounds.length - 1));
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+
+  /**
+   * Parse a range of chunks, splitting the range in half until it
+   * holds a single chunk.
+   */
+  private final class ChunkTask extends RecursiveTask<DBFileParser>
+  {
+    /** Default serial version ID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The first chunk in the range. */
+    private final int from;
+
+    /** One past the last chunk in the range. */
+    private final int to;
+
+    /**
+     * Constructor.
+     *
+     * @param fromChunk the first chunk in the range
+     * @param toChunk one past the last chunk in the range
+     */
+    ChunkTask(final int fromChunk, final int toChunk)
+    {
+      from = fromChunk;
+      to = toChunk;
+    }
+
+    @Override
+    protected DBFileParser compute()
+    {
+      if ((to - from) == 1)
+      {
+        return parseChunk(from);
+      }
+
+      final int mid = (from + to) >>> 1;
+      ChunkTask left = new ChunkTask(from, mid);
+      left.fork();
+      DBFileParser right = new ChunkTask(mid, to).compute();
+      DBFileParser result = left.join();
+      if ((result == null) || (right == null))
+      {
+        return null;
+      }
+
+      // Keep the results in file order
+      result.merge(right);
+      return result;
+    }
+  }
+
+
+  /**
+   * Parse one chunk.
+   *
+   * @param chunk the index of the chunk
+   * @return the parser holding the results, or null on error
+   */
+  private DBFileParser parseChunk(final int chunk)
+  {
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(bounds[chunk + 1]);
+    slice.position(bounds[chunk]);
+
+    InputStream body = new ByteBufferInputStream(slice);
+    if (chunk > 0)
+    {
+      body = new SequenceInputStream(new ByteArrayInputStream(START_TAG), body);
+    }
+
+    DBFileParser parser = new DBFileParser();
+    final boolean parsed = parser.parse(
+        new SequenceInputStream(body, new ByteArrayInputStream(END_TAG)));
+    return (parsed ? parser : null);
+  }
+
+
+  /**
+   * Check whether the file is UTF-8 (or plain ASCII): it has no
+   * byte order mark other than UTF-8's, and the XML declaration
+   * names no other encoding.
+   *
+   * @return whether the file is UTF-8
+   */
+  private boolean isUtf8()
+  {
+    int pos = buffer.position();
+    final int limit = buffer.limit();
+    if (((limit - pos) >= 3) && ((buffer.get(pos) & 0xFF) == 0xEF) &&
+        ((buffer.get(pos + 1) & 0xFF) == 0xBB) && ((buffer.get(pos + 2) & 0xFF) == 0xBF))
+    {
+      pos += 3;
+    }
+
+    if ((pos >= limit) || (buffer.get(pos) != '<'))
+    {
+      return false;
+    }
+
+    // Read the XML declaration, if there is one
+    if (!startsWith(pos, "<?xml".getBytes(ASCII)))
+    {
+      return true;
+    }
+
+    StringBuilder sb = new StringBuilder(64);
+    for (int i = pos; (i < limit) && (sb.length() < 200); ++i)
+    {
+      final char ch = (char) (buffer.get(i) & 0xFF);
+      sb.append(ch);
+      if (ch == '>')
+      {
+        break;
+      }
+    }
+
+    final String decl = sb.toString().toUpperCase();
+    final int index = decl.indexOf("ENCODING");
+    if (index < 0)
+    {
+      return true;
+    }
+
+    final String rest = decl.substring(index);
+    return (rest.contains("UTF-8") || rest.contains("UTF8") || rest.contains("ASCII"));
+  }
+
+
+  /**
+   * Find the first table tag in a range of the buffer.  The tag must
+   * be followed by whitespace, '>' or '/', so &lt;tables&gt; isn't
+   * a match.
+   *
+   * @param from the offset to start searching from
+   * @param to the offset to stop searching at
+   * @return the offset of the tag, or -1 if not found
+   */
+  private int findTable(final int from, final int to)
+  {
+    final int last = to - TABLE_TAG.length;
+    for (int i = from; i < last; ++i)
+    {
+      if ((buffer.get(i) == '<') && startsWith(i, TABLE_TAG))
+      {
+        final byte next = buffer.get(i + TABLE_TAG.length);
+        if ((next == ' ') || (next == '\t') || (next == '\r') ||
+            (next == '\n') || (next == '>') || (next == '/'))
+        {
+          return i;
+        }
+      }
+    }
+
+    return -1;
+  }
+
+
+  /**
+   * Find the last occurrence of a tag in the buffer.
+   *
+   * @param tag the tag
+   * @return the offset of the tag, or -1 if not found
+   */
+  private int findLast(final byte[] tag)
+  {
+    for (int i = buffer.limit() - tag.length; i >= buffer.position(); --i)
+    {
+      if (startsWith(i, tag))
+      {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+  /**
+   * Check whether the bytes at an offset in the buffer match a tag.
+   *
+   * @param offset the offset in the buffer
+   * @param tag the tag
+   * @return whether they match
+   */
+  private boolean startsWith(final int offset, final byte[] tag)
+  {
+    if ((offset + tag.length) > buffer.limit())
+    {
+      return false;
+    }
+
+    for (int i = 0; i < tag.length; ++i)
+    {
+      if (buffer.get(offset + i) != tag[i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
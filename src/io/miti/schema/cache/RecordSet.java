@@ -0,0 +1,149 @@
+package io.miti.schema.cache;
+
+/**
+ * A read-only view of some of the records in a store, such as the
+ * columns of one table, read straight from the store's arrays.
+ * Names are also available as their IDs, which are in alphabetical
+ * order, so rows can be sorted without comparing strings.
+ */
+public final class RecordSet
+{
+  /** The store holding the records. */
+  private final SchemaStore store;
+
+  /** The records, by row. */
+  private final int[] records;
+
+
+  /**
+   * Constructor.
+   *
+   * @param data the store holding the records
+   * @param recs the records, by row
+   */
+  RecordSet(final SchemaStore data, final int[] recs)
+  {
+    store = data;
+    records = recs;
+  }
+
+
+  /**
+   * Return the number of rows.
+   *
+   * @return the number of rows
+   */
+  public int size()
+  {
+    return records.length;
+  }
+
+
+  /**
+   * Return the column order of a row.
+   *
+   * @param row the row
+   * @return the column's position in its table
+   */
+  public int getOrder(final int row)
+  {
+    return store.getRecordOrder(records[row]);
+  }
+
+
+  /**
+   * Return the table ID of a row.
+   *
+   * @param row the row
+   * @return the table ID
+   */
+  public int getTableId(final int row)
+  {
+    return store.getRecordTable(records[row]);
+  }
+
+
+  /**
+   * Return the table name of a row.
+   *
+   * @param row the row
+   * @return the table name
+   */
+  public String getTableName(final int row)
+  {
+    return store.getTableName(getTableId(row));
+  }
+
+
+  /**
+   * Return the column name ID of a row.
+   *
+   * @param row the row
+   * @return the column name ID
+   */
+  public int getColumnId(final int row)
+  {
+    return store.getRecordColumn(records[row]);
+  }
+
+
+  /**
+   * Return the column name of a row.
+   *
+   * @param row the row
+   * @return the column name
+   */
+  public String getColumnName(final int row)
+  {
+    return store.getColumnName(getColumnId(row));
+  }
+
+
+  /**
+   * Return the position of a row's type in alphabetical order.  The
+   * store keeps its types sorted, so this is the type ID.
+   *
+   * @param row the row
+   * @return the rank of the type
+   */
+  public int getTypeRank(final int row)
+  {
+    return store.getRecordType(records[row]);
+  }
+
+
+  /**
+   * Return the column type of a row.
+   *
+   * @param row the row
+   * @return the column type
+   */
+  public String getType(final int row)
+  {
+    return store.getTypeName(store.getRecordType(records[row]));
+  }
+
+
+  /**
+   * Return whether a row's column is nullable.
+   *
+   * @param row the row
+   * @return whether the column is nullable
+   */
+  public boolean isNullable(final int row)
+  {
+    return store.isRecordNullable(records[row]);
+  }
+
+
+  /**
+   * Return whether a row's column is in the primary key.
+   *
+   * @param row the row
+   * @return whether the column is in the primary key
+   */
+  public boolean isPrimaryKey(final int row)
+  {
+    return store.isRecordPK(records[row]);
+  }
+}
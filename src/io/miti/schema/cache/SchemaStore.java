@@ -0,0 +1,839 @@
+package io.miti.schema.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.miti.schema.dbutil.TableInfo;
+
+/**
+ * The schema data, stored by column rather than as one object per
+ * database column.  Table and column names are kept once each, in
+ * sorted arrays, so a name's position in its array is its ID.  Each
+ * database column is a record: the record's table ID, column name
+ * ID, type ID and order are held in parallel int arrays, and the
+ * nullable and primary key flags in bitsets.  Records are grouped by
+ * table, in table name order; a second index lists the records for
+ * each column name.  The types are sorted too, so records can be
+ * sorted by type ID without comparing strings.
+ *
+ * TableInfo objects are only created when the columns of a table,
+ * or the tables for a column name, are looked up.  The arrays are
+ * never changed once the store is built.
+ */
+public final class SchemaStore
+{
+  /** The table names, sorted. */
+  private final String[] tableNames;
+
+  /** The column names, sorted. */
+  private final String[] columnNames;
+
+  /** The distinct column types, sorted. */
+  private final String[] types;
+
+  /** The table ID of each record. */
+  private final int[] recTable;
+
+  /** The column name ID of each record. */
+  private final int[] recColumn;
+
+  /** The type ID of each record. */
+  private final int[] recType;
+
+  /** The column order of each record. */
+  private final int[] recOrder;
+
+  /** The records for nullable columns (one bit per record). */
+  private final long[] nullable;
+
+  /** The records for primary key columns (one bit per record). */
+  private final long[] primaryKey;
+
+  /** The first record of each table; the last entry is the record count. */
+  private final int[] tableStart;
+
+  /** The start of each column name's records in columnRecords. */
+  private final int[] columnStart;
+
+  /** The records, grouped by column name, in table order. */
+  private final int[] columnRecords;
+
+
+  /**
+   * Constructor taking the records, which must be grouped by table
+   * in table name order.  The arrays are used as-is, not copied.
+   *
+   * @param tables the table names, sorted
+   * @param columns the column names, sorted
+   * @param typeNames the distinct column types, sorted
+   * @param table the table ID of each record
+   * @param column the column name ID of each record
+   * @param type the type ID of each record
+   * @param order the column order of each record
+   * @param nullBits the nullable flag of each record
+   * @param pkBits the primary key flag of each record
+   */
+  SchemaStore(final String[] tables, final String[] columns,
+              final String[] typeNames, final int[] table,
+              final int[] column, final int[] type, final int[] order,
+              final long[] nullBits, final long[] pkBits)
+  {
+    tableNames = tables;
+    columnNames = columns;
+    types = typeNames;
+    recTable = table;
+    recColumn = column;
+    recType = type;
+    recOrder = order;
+    nullable = nullBits;
+    primaryKey = pkBits;
+
+    // Find where each table's records start
+    final int count = recTable.length;
+    tableStart = new int[tableNames.length + 1];
+    for (int i = 0; i < count; ++i)
+    {
+      ++tableStart[recTable[i] + 1];
+    }
+    for (int i = 0; i < tableNames.length; ++i)
+    {
+      tableStart[i + 1] += tableStart[i];
+    }
+
+    // Group the records by column name (a counting sort, so each
+    // column's records stay in table order)
+    columnStart = new int[columnNames.length + 1];
+    for (int i = 0; i < count; ++i)
+    {
+      ++columnStart[recColumn[i] + 1];
+    }
+    for (int i = 0; i < columnNames.length; ++i)
+    {
+      columnStart[i + 1] += columnStart[i];
+    }
+
+    columnRecords = new int[count];
+    int[] next = Arrays.copyOf(columnStart, columnNames.length);
+    for (int i = 0; i < count; ++i)
+    {
+      columnRecords[next[recColumn[i]]++] = i;
+    }
+  }
+
+
+  /**
+   * Build a store from a map of table name to the columns in that
+   * table, as read by the XML parser.
+   *
+   * @param tableMap map of table name to the columns in that table
+   * @param columnSet the distinct column names
+   * @return the store
+   */
+  public static SchemaStore build(final Map<String, List<TableInfo>> tableMap,
+                                  final Collection<String> columnSet)
+  {
+    final String[] tables = sortedArray(tableMap.keySet());
+    final String[] columns = sortedArray(columnSet);
+
+    Builder builder = new Builder(tables.length, columns, 8);
+    for (int i = 0; i < tables.length; ++i)
+    {
+      builder.addColumns(i, tableMap.get(tables[i]));
+    }
+
+    return builder.build(tables);
+  }
+
+
+  /**
+   * Return a copy of this store with tables added, replaced or
+   * dropped.  The records are copied in one pass; only the names
+   * in the delta are sorted.
+   *
+   * @param changed map of table name to the new columns in that table
+   * @param dropped the names of the tables to drop
+   * @return the patched store
+   */
+  public SchemaStore patch(final Map<String, List<TableInfo>> changed,
+                           final Collection<String> dropped)
+  {
+    // Merge the table names, leaving out the dropped tables
+    Set<String> removed = new HashSet<String>(dropped);
+    removed.removeAll(changed.keySet());
+    final String[] added = sortedArray(changed.keySet());
+    List<String> tableList = new ArrayList<String>(tableNames.length + added.length);
+    int a = 0;
+    for (String name : tableNames)
+    {
+      while ((a < added.length) && (added[a].compareTo(name) < 0))
+      {
+        tableList.add(added[a++]);
+      }
+
+      if ((a < added.length) && added[a].equals(name))
+      {
+        tableList.add(added[a++]);
+      }
+      else if (!removed.contains(name))
+      {
+        tableList.add(name);
+      }
+    }
+    while (a < added.length)
+    {
+      tableList.add(added[a++]);
+    }
+    final String[] tables = tableList.toArray(new String[tableList.size()]);
+
+    // Find the column names still in use
+    int[] use = new int[columnNames.length];
+    Set<String> newColumns = new HashSet<String>(16);
+    for (int t = 0; t < tables.length; ++t)
+    {
+      final List<TableInfo> cols = changed.get(tables[t]);
+      if (cols != null)
+      {
+        for (TableInfo info : cols)
+        {
+          final int id = Arrays.binarySearch(columnNames, info.columnName);
+          if (id >= 0)
+          {
+            ++use[id];
+          }
+          else
+          {
+            newColumns.add(info.columnName);
+          }
+        }
+      }
+      else
+      {
+        final int old = Arrays.binarySearch(tableNames, tables[t]);
+        for (int r = tableStart[old]; r < tableStart[old + 1]; ++r)
+        {
+          ++use[recColumn[r]];
+        }
+      }
+    }
+
+    // Merge the column names, and map the old IDs to the new ones
+    final String[] addedColumns = sortedArray(newColumns);
+    List<String> columnList = new ArrayList<String>(columnNames.length + addedColumns.length);
+    int[] columnMap = new int[columnNames.length];
+    a = 0;
+    for (int c = 0; c < columnNames.length; ++c)
+    {
+      while ((a < addedColumns.length) && (addedColumns[a].compareTo(columnNames[c]) < 0))
+      {
+        columnList.add(addedColumns[a++]);
+      }
+
+      if (use[c] > 0)
+      {
+        columnMap[c] = columnList.size();
+        columnList.add(columnNames[c]);
+      }
+      else
+      {
+        columnMap[c] = -1;
+      }
+    }
+    while (a < addedColumns.length)
+    {
+      columnList.add(addedColumns[a++]);
+    }
+    final String[] columns = columnList.toArray(new String[columnList.size()]);
+
+    // Copy the records, switching to the new IDs
+    Builder builder = new Builder(tables.length, columns, recTable.length + 8);
+    builder.addTypes(types);
+    for (int t = 0; t < tables.length; ++t)
+    {
+      final List<TableInfo> cols = changed.get(tables[t]);
+      if (cols != null)
+      {
+        builder.addColumns(t, cols);
+        continue;
+      }
+
+      final int old = Arrays.binarySearch(tableNames, tables[t]);
+      for (int r = tableStart[old]; r < tableStart[old + 1]; ++r)
+      {
+        builder.add(t, columnMap[recColumn[r]], recType[r], recOrder[r],
+                    isSet(nullable, r), isSet(primaryKey, r));
+      }
+    }
+
+    return builder.build(tables);
+  }
+
+
+  /**
+   * Collects records into growable arrays, then builds the store.
+   */
+  static final class Builder
+  {
+    /** The number of tables. */
+    private final int tableCount;
+
+    /** The column names, sorted. */
+    private final String[] columns;
+
+    /** The distinct column types, in the order they were added. */
+    private final List<String> typeList = new ArrayList<String>(64);
+
+    /** Map of column type to type ID. */
+    private final Map<String, Integer> typeIds = new HashMap<String, Integer>(64);
+
+    /** The number of records. */
+    private int count = 0;
+
+    /** The record arrays. */
+    private int[] table;
+    private int[] column;
+    private int[] type;
+    private int[] order;
+    private long[] nullBits;
+    private long[] pkBits;
+
+    /**
+     * Constructor.
+     *
+     * @param tables the number of tables
+     * @param columnNames the column names, sorted
+     * @param capacity the expected number of records
+     */
+    Builder(final int tables, final String[] columnNames, final int capacity)
+    {
+      tableCount = tables;
+      columns = columnNames;
+      final int size = Math.max(8, capacity);
+      table = new int[size];
+      column = new int[size];
+      type = new int[size];
+      order = new int[size];
+      nullBits = new long[(size + 63) >>> 6];
+      pkBits = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Add types to the dictionary, keeping their IDs.
+     *
+     * @param names the types
+     */
+    void addTypes(final String[] names)
+    {
+      for (String name : names)
+      {
+        getTypeId(name);
+      }
+    }
+
+    /**
+     * Add the columns of a table.
+     *
+     * @param tableId the table ID
+     * @param cols the columns in the table
+     */
+    void addColumns(final int tableId, final List<TableInfo> cols)
+    {
+      for (TableInfo info : cols)
+      {
+        add(tableId, Arrays.binarySearch(columns, info.columnName),
+            getTypeId(info.columnType), info.order, info.isNullable, info.isPK);
+      }
+    }
+
+    /**
+     * Add a record.  Records must be added grouped by table, in
+     * table order.
+     *
+     * @param tableId the table ID
+     * @param columnId the column name ID
+     * @param typeId the type ID
+     * @param columnOrder the column order
+     * @param isNullable whether the column is nullable
+     * @param isPK whether the column is in the primary key
+     */
+    void add(final int tableId, final int columnId, final int typeId,
+             final int columnOrder, final boolean isNullable,
+             final boolean isPK)
+    {
+      if (count == table.length)
+      {
+        final int size = count + (count >> 1);
+        table = Arrays.copyOf(table, size);
+        column = Arrays.copyOf(column, size);
+        type = Arrays.copyOf(type, size);
+        order = Arrays.copyOf(order, size);
+        nullBits = Arrays.copyOf(nullBits, (size + 63) >>> 6);
+        pkBits = Arrays.copyOf(pkBits, (size + 63) >>> 6);
+      }
+
+      table[count] = tableId;
+      column[count] = columnId;
+      type[count] = typeId;
+      order[count] = columnOrder;
+      if (isNullable)
+      {
+        nullBits[count >>> 6] |= (1L << count);
+      }
+      if (isPK)
+      {
+        pkBits[count >>> 6] |= (1L << count);
+      }
+
+      ++count;
+    }
+
+    /**
+     * Return the ID of a column type, adding it if it's new.  A
+     * missing type is stored as an empty string.
+     *
+     * @param name the type (may be null)
+     * @return the type ID
+     */
+    int getTypeId(final String name)
+    {
+      final String key = (name == null) ? "" : name;
+      Integer id = typeIds.get(key);
+      if (id == null)
+      {
+        id = Integer.valueOf(typeList.size());
+        typeIds.put(key, id);
+        typeList.add(key);
+      }
+
+      return id.intValue();
+    }
+
+    /**
+     * Build the store, trimming the arrays to size.  The types are
+     * sorted, and the records switched to the sorted type IDs.
+     *
+     * @param tables the table names, sorted
+     * @return the store
+     */
+    SchemaStore build(final String[] tables)
+    {
+      if (tables.length != tableCount)
+      {
+        throw new IllegalArgumentException("Expected " + tableCount + " tables");
+      }
+
+      final String[] types = sortedArray(typeList);
+      int[] typeMap = new int[types.length];
+      for (int i = 0; i < typeMap.length; ++i)
+      {
+        typeMap[i] = Arrays.binarySearch(types, typeList.get(i));
+      }
+      for (int i = 0; i < count; ++i)
+      {
+        type[i] = typeMap[type[i]];
+      }
+
+      final int words = (count + 63) >>> 6;
+      return new SchemaStore(tables, columns, types,
+          Arrays.copyOf(table, count), Arrays.copyOf(column, count),
+          Arrays.copyOf(type, count), Arrays.copyOf(order, count),
+          Arrays.copyOf(nullBits, words), Arrays.copyOf(pkBits, words));
+    }
+  }
+
+
+  /**
+   * Return the strings in a collection as a sorted array.
+   *
+   * @param strings the strings
+   * @return the sorted array
+   */
+  private static String[] sortedArray(final Collection<String> strings)
+  {
+    String[] array = strings.toArray(new String[strings.size()]);
+    Arrays.sort(array);
+    return array;
+  }
+
+
+  /**
+   * Check whether a record's bit is set in a bitset.
+   *
+   * @param bits the bitset
+   * @param rec the record
+   * @return whether the bit is set
+   */
+  private static boolean isSet(final long[] bits, final int rec)
+  {
+    return ((bits[rec >>> 6] & (1L << rec)) != 0L);
+  }
+
+
+  /**
+   * Create a TableInfo object for a record.
+   *
+   * @param rec the record
+   * @return the object
+   */
+  private TableInfo createInfo(final int rec)
+  {
+    TableInfo info = new TableInfo();
+    info.tableName = tableNames[recTable[rec]];
+    info.columnName = columnNames[recColumn[rec]];
+    info.columnType = types[recType[rec]];
+    info.order = recOrder[rec];
+    info.isNullable = isSet(nullable, rec);
+    info.isPK = isSet(primaryKey, rec);
+    return info;
+  }
+
+
+  /**
+   * Return the columns in a table.  A new read-only list is
+   * created on each call.
+   *
+   * @param table the table name
+   * @return the columns, or null if there's no such table
+   */
+  public List<TableInfo> getTableInfo(final String table)
+  {
+    final int id = getTableId(table);
+    if (id < 0)
+    {
+      return null;
+    }
+
+    final int end = tableStart[id + 1];
+    List<TableInfo> list = new ArrayList<TableInfo>(end - tableStart[id]);
+    for (int rec = tableStart[id]; rec < end; ++rec)
+    {
+      list.add(createInfo(rec));
+    }
+
+    return Collections.unmodifiableList(list);
+  }
+
+
+  /**
+   * Return the tables with a column name.  A new read-only list
+   * is created on each call.
+   *
+   * @param column the column name
+   * @return the tables' columns, or null if there's no such column
+   */
+  public List<TableInfo> getColumnInfo(final String column)
+  {
+    final int id = getColumnId(column);
+    if (id < 0)
+    {
+      return null;
+    }
+
+    final int end = columnStart[id + 1];
+    List<TableInfo> list = new ArrayList<TableInfo>(end - columnStart[id]);
+    for (int i = columnStart[id]; i < end; ++i)
+    {
+      list.add(createInfo(columnRecords[i]));
+    }
+
+    return Collections.unmodifiableList(list);
+  }
+
+
+  /**
+   * Return the records for the columns in a table, in column order.
+   *
+   * @param table the table name
+   * @return the records, or null if there's no such table
+   */
+  public RecordSet getTableRecords(final String table)
+  {
+    final int id = getTableId(table);
+    if (id < 0)
+    {
+      return null;
+    }
+
+    int[] recs = new int[tableStart[id + 1] - tableStart[id]];
+    for (int i = 0; i < recs.length; ++i)
+    {
+      recs[i] = tableStart[id] + i;
+    }
+
+    return new RecordSet(this, recs);
+  }
+
+
+  /**
+   * Return the records for the tables with a column name, in
+   * table name order.
+   *
+   * @param column the column name
+   * @return the records, or null if there's no such column
+   */
+  public RecordSet getColumnRecords(final String column)
+  {
+    final int id = getColumnId(column);
+    if (id < 0)
+    {
+      return null;
+    }
+
+    return new RecordSet(this, Arrays.copyOfRange(columnRecords,
+                                  columnStart[id], columnStart[id + 1]));
+  }
+
+
+  /**
+   * Return the ID of a table.
+   *
+   * @param table the table name
+   * @return the table ID, or a negative number if not found
+   */
+  public int getTableId(final String table)
+  {
+    return ((table == null) ? -1 : Arrays.binarySearch(tableNames, table));
+  }
+
+
+  /**
+   * Return the ID of a column name.
+   *
+   * @param column the column name
+   * @return the column ID, or a negative number if not found
+   */
+  public int getColumnId(final String column)
+  {
+    return ((column == null) ? -1 : Arrays.binarySearch(columnNames, column));
+  }
+
+
+  /**
+   * Return the number of tables.
+   *
+   * @return the number of tables
+   */
+  public int getTableCount()
+  {
+    return tableNames.length;
+  }
+
+
+  /**
+   * Return the number of distinct column names.
+   *
+   * @return the number of column names
+   */
+  public int getColumnCount()
+  {
+    return columnNames.length;
+  }
+
+
+  /**
+   * Return the number of records (columns in all tables).
+   *
+   * @return the number of records
+   */
+  public int getRecordCount()
+  {
+    return recTable.length;
+  }
+
+
+  /**
+   * Return the name of a table.
+   *
+   * @param id the table ID
+   * @return the table name
+   */
+  public String getTableName(final int id)
+  {
+    return tableNames[id];
+  }
+
+
+  /**
+   * Return a column name.
+   *
+   * @param id the column ID
+   * @return the column name
+   */
+  public String getColumnName(final int id)
+  {
+    return columnNames[id];
+  }
+
+
+  /**
+   * Return whether another store has the same table names.
+   *
+   * @param other the other store
+   * @return whether the table names are the same
+   */
+  public boolean hasSameTableNames(final SchemaStore other)
+  {
+    return Arrays.equals(tableNames, other.tableNames);
+  }
+
+
+  /**
+   * Return whether another store has the same column names.
+   *
+   * @param other the other store
+   * @return whether the column names are the same
+   */
+  public boolean hasSameColumnNames(final SchemaStore other)
+  {
+    return Arrays.equals(columnNames, other.columnNames);
+  }
+
+
+  /**
+   * Return the sorted table names, as a read-only list.
+   *
+   * @return the table names
+   */
+  public List<String> getTableNames()
+  {
+    return Collections.unmodifiableList(Arrays.asList(tableNames));
+  }
+
+
+  /**
+   * Return the sorted column names, as a read-only list.
+   *
+   * @return the column names
+   */
+  public List<String> getColumnNames()
+  {
+    return Collections.unmodifiableList(Arrays.asList(columnNames));
+  }
+
+
+  /**
+   * Return the distinct column types.  The array must not be changed.
+   *
+   * @return the column types, sorted, so by type ID
+   */
+  String[] getTypes()
+  {
+    return types;
+  }
+
+
+  /**
+   * Return the name of a type.
+   *
+   * @param id the type ID
+   * @return the type name
+   */
+  String getTypeName(final int id)
+  {
+    return types[id];
+  }
+
+
+  /**
+   * Return the table ID of a record.
+   *
+   * @param rec the record
+   * @return the table ID
+   */
+  int getRecordTable(final int rec)
+  {
+    return recTable[rec];
+  }
+
+
+  /**
+   * Return the column name ID of a record.
+   *
+   * @param rec the record
+   * @return the column name ID
+   */
+  int getRecordColumn(final int rec)
+  {
+    return recColumn[rec];
+  }
+
+
+  /**
+   * Return the type ID of a record.
+   *
+   * @param rec the record
+   * @return the type ID
+   */
+  int getRecordType(final int rec)
+  {
+    return recType[rec];
+  }
+
+
+  /**
+   * Return the column order of a record.
+   *
+   * @param rec the record
+   * @return the column order
+   */
+  int getRecordOrder(final int rec)
+  {
+    return recOrder[rec];
+  }
+
+
+  /**
+   * Return whether a record's column is nullable.
+   *
+   * @param rec the record
+   * @return whether the column is nullable
+   */
+  boolean isRecordNullable(final int rec)
+  {
+    return isSet(nullable, rec);
+  }
+
+
+  /**
+   * Return whether a record's column is in the primary key.
+   *
+   * @param rec the record
+   * @return whether the column is in the primary key
+   */
+  boolean isRecordPK(final int rec)
+  {
+    return isSet(primaryKey, rec);
+  }
+
+
+  /**
+   * Return the first record of a table.
+   *
+   * @param id the table ID
+   * @return the first record
+   */
+  int getTableStart(final int id)
+  {
+    return tableStart[id];
+  }
+
+
+  /**
+   * Estimate the heap size of the arrays, not counting the strings
+   * (assuming compressed references).
+   *
+   * @return the estimated size, in bytes
+   */
+  public long getArrayBytes()
+  {
+    return (4L * ((recTable.length * 5L) + tableStart.length + columnStart.length +
+                  tableNames.length + columnNames.length + (2L * types.length)) +
+            (16L * nullable.length));
+  }
+}
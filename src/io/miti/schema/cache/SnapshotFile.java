@@ -0,0 +1,621 @@
+package io.miti.schema.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.miti.schema.util.Content;
+import io.miti.schema.util.Utility;
+
+/**
+ * The compiled (binary) form of the database info file.  The file
+ * holds a string dictionary, the sorted table and column names as
+ * indexes into the dictionary, and one fixed-width record per column:
+ *
+ * <pre>
+ *   int    magic, version
+ *   int    lastrun string ID (-1 if none)
+ *   int    string count, table count, column count, type count,
+ *          record count
+ *   int[]  string offsets (string count + 1)
+ *   byte[] string data (UTF-8), padded to a multiple of 4
+ *   int[]  table name string IDs, sorted by name
+ *   int[]  column name string IDs, sorted by name
+ *   int[]  column type string IDs, sorted by type
+ *   int[4] per record: table index, column index, type index,
+ *          order | nullable bit | primary key bit
+ * </pre>
+ *
+ * Records are grouped by table, in table name order, so loading the
+ * file needs no XML parsing and no sorting.
+ */
+public final class SnapshotFile
+{
+  /** The name of the compiled database info file. */
+  public static final String BINARY_FILE_NAME = "tables.bin";
+
+  /** The magic number at the start of the file ("SBS1"). */
+  private static final int MAGIC = 0x53425331;
+
+  /** The file format version. */
+  private static final int VERSION = 2;
+
+  /** The number of ints in the header. */
+  private static final int HEADER_INTS = 8;
+
+  /** The bit in a record's order field for nullable columns. */
+  private static final int NULLABLE_BIT = 0x40000000;
+
+  /** The bit in a record's order field for primary key columns. */
+  private static final int PK_BIT = 0x80000000;
+
+  /** The mask for the column order in a record's order field. */
+  private static final int ORDER_MASK = 0x3FFFFFFF;
+
+  /** The encoding of the string data. */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** The schema data read from the file. */
+  private SchemaStore store = null;
+
+  /** The lastrun string read from the file (may be null). */
+  private String lastRun = null;
+
+
+  /**
+   * Default constructor.
+   */
+  public SnapshotFile()
+  {
+    super();
+  }
+
+
+  /**
+   * Load the compiled snapshot, if there is one.  When running from
+   * the data directory, the file is memory-mapped; it is skipped if
+   * it is older than the XML file it was compiled from.  Resources
+   * in a jar cannot be mapped, so they are read into memory.
+   *
+   * @return whether a compiled snapshot was loaded
+   */
+  public boolean load()
+  {
+    // Skip a compiled file in the data directory that's out of date
+    if (!Utility.readFilesAsStream())
+    {
+      final File file = new File(Content.getContentPath(BINARY_FILE_NAME));
+      final File xml = new File(Content.getContentPath(DBFileParser.XML_FILE_NAME));
+      if (xml.isFile() && (file.lastModified() < xml.lastModified()))
+      {
+        return false;
+      }
+    }
+
+    try
+    {
+      final ByteBuffer buffer = openBundled(BINARY_FILE_NAME);
+      return ((buffer != null) && read(buffer));
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+
+  /**
+   * Open a data file bundled with the application.  When running
+   * from the data directory, the file is memory-mapped; a resource
+   * in a jar cannot be mapped, so it is read into memory.
+   *
+   * @param name the name of the data file
+   * @return the file contents, or null if there is no such file
+   * @throws IOException error reading the file
+   */
+  public static ByteBuffer openBundled(final String name) throws IOException
+  {
+    if (Utility.readFilesAsStream())
+    {
+      return readResource(Content.getStreamFromStream(name));
+    }
+
+    final File file = new File(Content.getContentPath(name));
+    return (file.isFile() ? map(file) : null);
+  }
+
+
+  /**
+   * Memory-map a file.
+   *
+   * @param file the file to map
+   * @return the mapped buffer
+   * @throws IOException error reading the file
+   */
+  public static ByteBuffer map(final File file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      // The mapping stays valid after the channel is closed
+      FileChannel channel = raf.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+
+  /**
+   * Read a resource stream into a buffer.
+   *
+   * @param is the input stream (may be null)
+   * @return the buffer, or null if there is no stream
+   * @throws IOException error reading the stream
+   */
+  private static ByteBuffer readResource(final InputStream is)
+    throws IOException
+  {
+    if (is == null)
+    {
+      return null;
+    }
+
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+      byte[] chunk = new byte[64 * 1024];
+      int len;
+      while ((len = is.read(chunk)) > 0)
+      {
+        out.write(chunk, 0, len);
+      }
+
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+
+  /**
+   * Check whether the buffer holds a compiled snapshot.
+   *
+   * @param buffer the buffer
+   * @return whether the buffer starts with the snapshot magic number
+   */
+  public static boolean isSnapshot(final ByteBuffer buffer)
+  {
+    return ((buffer.limit() >= (HEADER_INTS * 4)) &&
+            (buffer.getInt(0) == MAGIC));
+  }
+
+
+  /**
+   * Read the snapshot from the buffer.  The counts, offsets and IDs
+   * are checked against the buffer before they're used, so a
+   * truncated or corrupt file is rejected rather than read.
+   *
+   * @param buffer the buffer holding the snapshot
+   * @return whether the snapshot was read successfully
+   */
+  public boolean read(final ByteBuffer buffer)
+  {
+    if (!isSnapshot(buffer) || (buffer.getInt(4) != VERSION))
+    {
+      System.err.println("Error: unrecognized snapshot file format");
+      return false;
+    }
+
+    try
+    {
+      return readSnapshot(buffer);
+    }
+    catch (RuntimeException e)
+    {
+      System.err.println("Error: unable to read the snapshot file: " + e);
+      return false;
+    }
+  }
+
+
+  /**
+   * Read the snapshot from a buffer with a valid header.
+   *
+   * @param buffer the buffer holding the snapshot
+   * @return whether the snapshot was read successfully
+   */
+  private boolean readSnapshot(final ByteBuffer buffer)
+  {
+    // Read the header
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.position(2);
+    final int lastRunId = ints.get();
+    final int stringCount = ints.get();
+    final int tableCount = ints.get();
+    final int columnCount = ints.get();
+    final int typeCount = ints.get();
+    final int recordCount = ints.get();
+    if ((stringCount < 0) || (tableCount < 0) || (columnCount < 0) ||
+        (typeCount < 0) || (recordCount < 0) ||
+        (lastRunId < -1) || (lastRunId >= stringCount))
+    {
+      return invalid("bad header");
+    }
+
+    // Check the offsets fit before allocating them
+    final long limit = buffer.limit();
+    final long dataStart = (HEADER_INTS + stringCount + 1L) * 4L;
+    if (dataStart > limit)
+    {
+      return invalid("truncated string offsets");
+    }
+
+    // Read the string dictionary
+    int[] offsets = new int[stringCount + 1];
+    ints.get(offsets);
+    if (offsets[0] != 0)
+    {
+      return invalid("bad string offsets");
+    }
+    for (int i = 0; i < stringCount; ++i)
+    {
+      if (offsets[i + 1] < offsets[i])
+      {
+        return invalid("bad string offsets");
+      }
+    }
+
+    // The rest of the file's size is fixed by the counts
+    final long namesStart = dataStart + ((offsets[stringCount] + 3L) & ~3L);
+    final long size = namesStart +
+                        ((long) tableCount + columnCount + typeCount) * 4L +
+                        (recordCount * 16L);
+    if (size > limit)
+    {
+      return invalid("truncated data");
+    }
+    final String[] dict = readStrings(buffer, (int) dataStart, offsets);
+
+    // Read the names, which must be sorted, since they're found by
+    // binary search
+    ints.position((int) (namesStart / 4));
+    String[] tableArray = new String[tableCount];
+    for (int i = 0; i < tableCount; ++i)
+    {
+      final int id = ints.get();
+      if ((id < 0) || (id >= stringCount) ||
+          ((i > 0) && (tableArray[i - 1].compareTo(dict[id]) >= 0)))
+      {
+        return invalid("bad table name ID");
+      }
+      tableArray[i] = dict[id];
+    }
+    String[] columnArray = new String[columnCount];
+    for (int i = 0; i < columnCount; ++i)
+    {
+      final int id = ints.get();
+      if ((id < 0) || (id >= stringCount) ||
+          ((i > 0) && (columnArray[i - 1].compareTo(dict[id]) >= 0)))
+      {
+        return invalid("bad column name ID");
+      }
+      columnArray[i] = dict[id];
+    }
+    String[] typeArray = new String[typeCount];
+    for (int i = 0; i < typeCount; ++i)
+    {
+      final int id = ints.get();
+      if ((id < 0) || (id >= stringCount) ||
+          ((i > 0) && (typeArray[i - 1].compareTo(dict[id]) >= 0)))
+      {
+        return invalid("bad column type ID");
+      }
+      typeArray[i] = dict[id];
+    }
+
+    // Read the records, which are grouped by table
+    int[] recTable = new int[recordCount];
+    int[] recColumn = new int[recordCount];
+    int[] recType = new int[recordCount];
+    int[] recOrder = new int[recordCount];
+    long[] nullable = new long[(recordCount + 63) >>> 6];
+    long[] primaryKey = new long[nullable.length];
+    int lastTable = 0;
+    for (int i = 0; i < recordCount; ++i)
+    {
+      recTable[i] = ints.get();
+      recColumn[i] = ints.get();
+      recType[i] = ints.get();
+      if ((recTable[i] < lastTable) || (recTable[i] >= tableCount) ||
+          (recColumn[i] < 0) || (recColumn[i] >= columnCount) ||
+          (recType[i] < 0) || (recType[i] >= typeCount))
+      {
+        return invalid("bad record " + i);
+      }
+      lastTable = recTable[i];
+
+      final int orderFlags = ints.get();
+      recOrder[i] = (orderFlags & ORDER_MASK);
+      if ((orderFlags & NULLABLE_BIT) != 0)
+      {
+        nullable[i >>> 6] |= (1L << i);
+      }
+      if ((orderFlags & PK_BIT) != 0)
+      {
+        primaryKey[i >>> 6] |= (1L << i);
+      }
+    }
+
+    store = new SchemaStore(tableArray, columnArray, typeArray, recTable,
+                            recColumn, recType, recOrder, nullable, primaryKey);
+    lastRun = (lastRunId < 0) ? null : dict[lastRunId];
+    return true;
+  }
+
+
+  /**
+   * Report a snapshot file that doesn't match its header.
+   *
+   * @param reason what's wrong with the file
+   * @return false
+   */
+  private static boolean invalid(final String reason)
+  {
+    System.err.println("Error: invalid snapshot file (" + reason + ")");
+    return false;
+  }
+
+
+  /**
+   * Decode the string dictionary.
+   *
+   * @param buffer the snapshot buffer
+   * @param dataStart the offset of the string data
+   * @param offsets the offset of each string in the string data
+   * @return the strings
+   */
+  private static String[] readStrings(final ByteBuffer buffer,
+                                      final int dataStart,
+                                      final int[] offsets)
+  {
+    final int count = offsets.length - 1;
+    String[] dict = new String[count];
+    byte[] bytes = new byte[256];
+    ByteBuffer data = buffer.duplicate();
+    data.position(dataStart);
+    for (int i = 0; i < count; ++i)
+    {
+      final int len = offsets[i + 1] - offsets[i];
+      if (len > bytes.length)
+      {
+        bytes = new byte[Math.max(len, bytes.length * 2)];
+      }
+
+      data.get(bytes, 0, len);
+      dict[i] = new String(bytes, 0, len, UTF8);
+    }
+
+    return dict;
+  }
+
+
+  /**
+   * Write the snapshot to a file.
+   *
+   * @param file the output file
+   * @param data the schema data
+   * @param lastRun the lastrun string from the input file (may be null)
+   * @throws IOException error writing the file
+   */
+  public static void write(final File file, final SchemaStore data,
+                           final String lastRun)
+    throws IOException
+  {
+    // Build the string dictionary
+    Map<String, Integer> ids = new HashMap<String, Integer>(256);
+    List<String> strings = new ArrayList<String>(256);
+    final int lastRunId = (lastRun == null) ? -1 : addString(lastRun, ids, strings);
+    int[] tableIds = new int[data.getTableCount()];
+    for (int i = 0; i < tableIds.length; ++i)
+    {
+      tableIds[i] = addString(data.getTableName(i), ids, strings);
+    }
+    int[] columnIds = new int[data.getColumnCount()];
+    for (int i = 0; i < columnIds.length; ++i)
+    {
+      columnIds[i] = addString(data.getColumnName(i), ids, strings);
+    }
+    final String[] types = data.getTypes();
+    int[] typeIds = new int[types.length];
+    for (int i = 0; i < typeIds.length; ++i)
+    {
+      typeIds[i] = addString(types[i], ids, strings);
+    }
+
+    final int recordCount = data.getRecordCount();
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    try
+    {
+      // Write the header
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(lastRunId);
+      out.writeInt(strings.size());
+      out.writeInt(tableIds.length);
+      out.writeInt(columnIds.length);
+      out.writeInt(typeIds.length);
+      out.writeInt(recordCount);
+
+      // Write the string dictionary
+      List<byte[]> encoded = new ArrayList<byte[]>(strings.size());
+      int offset = 0;
+      out.writeInt(offset);
+      for (String str : strings)
+      {
+        byte[] bytes = str.getBytes(UTF8);
+        encoded.add(bytes);
+        offset += bytes.length;
+        out.writeInt(offset);
+      }
+      for (byte[] bytes : encoded)
+      {
+        out.write(bytes);
+      }
+      for (int i = offset; i < pad(offset); ++i)
+      {
+        out.writeByte(0);
+      }
+
+      // Write the sorted names
+      for (int id : tableIds)
+      {
+        out.writeInt(id);
+      }
+      for (int id : columnIds)
+      {
+        out.writeInt(id);
+      }
+      for (int id : typeIds)
+      {
+        out.writeInt(id);
+      }
+
+      // Write the records, grouped by table
+      for (int t = 0; t < tableIds.length; ++t)
+      {
+        final int end = data.getTableStart(t + 1);
+        for (int rec = data.getTableStart(t); rec < end; ++rec)
+        {
+          out.writeInt(t);
+          out.writeInt(data.getRecordColumn(rec));
+          out.writeInt(data.getRecordType(rec));
+          out.writeInt((data.getRecordOrder(rec) & ORDER_MASK) |
+                       (data.isRecordNullable(rec) ? NULLABLE_BIT : 0) |
+                       (data.isRecordPK(rec) ? PK_BIT : 0));
+        }
+      }
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+
+  /**
+   * Add a string to the dictionary, if it's not already there.
+   *
+   * @param str the string
+   * @param ids map of string to ID
+   * @param strings the list of strings, by ID
+   * @return the ID of the string
+   */
+  private static int addString(final String str,
+                               final Map<String, Integer> ids,
+                               final List<String> strings)
+  {
+    final String key = (str == null) ? "" : str;
+    Integer id = ids.get(key);
+    if (id == null)
+    {
+      id = Integer.valueOf(strings.size());
+      ids.put(key, id);
+      strings.add(key);
+    }
+
+    return id.intValue();
+  }
+
+
+  /**
+   * Round a byte count up to a multiple of 4.
+   *
+   * @param len the byte count
+   * @return the padded count
+   */
+  private static int pad(final int len)
+  {
+    return ((len + 3) & ~3);
+  }
+
+
+  /**
+   * Return the schema data read from the file.
+   *
+   * @return the schema data
+   */
+  public SchemaStore getStore()
+  {
+    return store;
+  }
+
+
+  /**
+   * Return the lastrun string read from the file.
+   *
+   * @return the lastrun string, or null if there isn't one
+   */
+  public String getLastRun()
+  {
+    return lastRun;
+  }
+
+
+  /**
+   * Compile an XML database info file into a binary snapshot.
+   *
+   * @param args the input XML file and the output file
+   */
+  public static void main(final String[] args)
+  {
+    if (args.length != 2)
+    {
+      System.err.println("Usage: SnapshotFile <input tables.xml> <output tables.bin>");
+      System.exit(1);
+    }
+
+    try
+    {
+      // Parse the XML file
+      DBFileParser parser = new DBFileParser();
+      if (!parser.parse(new FileInputStream(args[0])))
+      {
+        System.err.println("Error: unable to parse " + args[0]);
+        System.exit(1);
+      }
+
+      // Write out the compiled version
+      final File out = new File(args[1]);
+      write(out, SchemaStore.build(parser.getTables(), parser.getColumns().keySet()),
+            parser.getLastRun());
+      System.out.println("Wrote " + out.getPath() + " (" + parser.getTables().size() +
+                         " tables, " + parser.getColumns().size() + " column names)");
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+}
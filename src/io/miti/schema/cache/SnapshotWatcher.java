@@ -0,0 +1,217 @@
+package io.miti.schema.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.miti.schema.util.Content;
+import io.miti.schema.util.Logger;
+import io.miti.schema.util.Utility;
+
+/**
+ * Watch the snapshot files on disk, and reload the cache on a
+ * background thread when one of them changes.  A change to just
+ * the delta file is applied to the current cache instead.
+ */
+public final class SnapshotWatcher implements Runnable
+{
+  /**
+   * How long the directory must be quiet before reloading, in
+   * milliseconds, so a file still being written isn't loaded.
+   */
+  private static final long QUIET_PERIOD = 500L;
+
+  /** The directory holding the snapshot files. */
+  private File dir = null;
+
+  /** The names of the snapshot files to watch in the directory. */
+  private Set<String> names = null;
+
+  /** Whether a snapshot file changed since the last reload. */
+  private boolean snapshotChanged = false;
+
+  /** Whether the delta file changed since the last reload. */
+  private boolean deltaChanged = false;
+
+  /** The listener to notify when the cache is reloaded. */
+  private CacheListener listener = null;
+
+
+  /**
+   * Constructor.
+   *
+   * @param directory the directory holding the snapshot files
+   * @param fileNames the names of the files to watch
+   * @param cacheListener the listener to notify on reload
+   */
+  private SnapshotWatcher(final File directory,
+                          final String[] fileNames,
+                          final CacheListener cacheListener)
+  {
+    dir = directory;
+    names = new HashSet<String>(Arrays.asList(fileNames));
+    listener = cacheListener;
+  }
+
+
+  /**
+   * Start watching the snapshot files used by the cache.  Nothing is
+   * watched if the snapshot is bundled in the jar.
+   *
+   * @param cacheListener the listener to notify on reload
+   */
+  public static void start(final CacheListener cacheListener)
+  {
+    SnapshotWatcher watcher = null;
+    final File external = DBCache.getSnapshotFile();
+    if (external != null)
+    {
+      watcher = new SnapshotWatcher(external.getAbsoluteFile().getParentFile(),
+                     new String[] {external.getName()}, cacheListener);
+    }
+    else if (!Utility.readFilesAsStream())
+    {
+      final File xml = new File(Content.getContentPath(DBFileParser.XML_FILE_NAME));
+      watcher = new SnapshotWatcher(xml.getAbsoluteFile().getParentFile(),
+                     new String[] {DBFileParser.XML_FILE_NAME,
+                                   SnapshotFile.BINARY_FILE_NAME}, cacheListener);
+    }
+
+    if ((watcher != null) && watcher.dir.isDirectory())
+    {
+      Thread thread = new Thread(watcher, "Snapshot watcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+
+  /**
+   * Watch the directory until the thread is interrupted.
+   */
+  @Override
+  public void run()
+  {
+    WatchService service = null;
+    try
+    {
+      service = FileSystems.getDefault().newWatchService();
+      dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+
+      while (true)
+      {
+        checkEvents(service.take());
+        if (snapshotChanged || deltaChanged)
+        {
+          // Wait for the writes to finish, then reload
+          WatchKey key;
+          while ((key = service.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null)
+          {
+            checkEvents(key);
+          }
+
+          reload();
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // The watcher was stopped
+      Thread.currentThread().interrupt();
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      if (service != null)
+      {
+        try
+        {
+          service.close();
+        }
+        catch (IOException e)
+        {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Record which files changed in the events for a watch key,
+   * and reset the key.
+   *
+   * @param key the watch key
+   */
+  private void checkEvents(final WatchKey key)
+  {
+    for (WatchEvent<?> event : key.pollEvents())
+    {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+      {
+        snapshotChanged = true;
+        continue;
+      }
+
+      final String name = ((Path) event.context()).toString();
+      if (names.contains(name))
+      {
+        snapshotChanged = true;
+      }
+      else if (name.equals(DBCache.DELTA_FILE_NAME))
+      {
+        deltaChanged = true;
+      }
+    }
+
+    key.reset();
+  }
+
+
+  /**
+   * Load and publish a new cache, and notify the listener.  A full
+   * reload also picks up a newer delta file.  If the files can't be
+   * loaded, the current cache is kept and the watcher carries on, so
+   * the next save is picked up.
+   */
+  private void reload()
+  {
+    DBCache cache = null;
+    try
+    {
+      cache = snapshotChanged ? DBCache.reload() :
+                DBCache.applyDelta(DBCache.getDeltaFile());
+    }
+    catch (RuntimeException e)
+    {
+      // A corrupt or half-written file
+      Logger.error(e);
+    }
+    finally
+    {
+      snapshotChanged = false;
+      deltaChanged = false;
+    }
+
+    if (cache == null)
+    {
+      Logger.error("Unable to reload the snapshot; keeping the current one");
+      return;
+    }
+
+    listener.cacheChanged(cache);
+  }
+}
@@ -0,0 +1,267 @@
+package io.miti.schema.cache;
+
+/**
+ * A load-time dictionary for sharing identical strings.  Schemas
+ * repeat the same column names and types thousands of times, so
+ * each distinct value is stored once and shared by every TableInfo
+ * that uses it.  Strings can be looked up straight from a character
+ * buffer, so no String is created for a value already in the pool.
+ */
+public final class StringPool
+{
+  /** The initial number of slots in the hash table. */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /** The hash table of pooled strings (open addressing). */
+  private String[] slots = new String[INITIAL_CAPACITY];
+
+  /** The number of distinct strings in the pool. */
+  private int size = 0;
+
+  /** The number of lookups that found an existing string. */
+  private long hits = 0L;
+
+  /** The estimated number of bytes saved by sharing strings. */
+  private long bytesSaved = 0L;
+
+
+  /**
+   * Default constructor.
+   */
+  public StringPool()
+  {
+    super();
+  }
+
+
+  /**
+   * Return the pooled string with the characters in the buffer,
+   * adding it to the pool if it's not there yet.
+   *
+   * @param buf the character buffer
+   * @param off the offset of the first character
+   * @param len the number of characters
+   * @return the pooled string
+   */
+  public String intern(final char[] buf, final int off, final int len)
+  {
+    int hash = 0;
+    for (int i = 0; i < len; ++i)
+    {
+      hash = (31 * hash) + buf[off + i];
+    }
+
+    final int mask = slots.length - 1;
+    int index = mix(hash) & mask;
+    String str;
+    while ((str = slots[index]) != null)
+    {
+      if (matches(str, hash, buf, off, len))
+      {
+        recordHit(len);
+        return str;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    str = new String(buf, off, len);
+    add(index, str);
+    return str;
+  }
+
+
+  /**
+   * Return the pooled copy of the string, adding it to the pool
+   * if it's not there yet.
+   *
+   * @param value the string (may be null)
+   * @return the pooled string
+   */
+  public String intern(final String value)
+  {
+    if (value == null)
+    {
+      return null;
+    }
+
+    final int mask = slots.length - 1;
+    int index = mix(value.hashCode()) & mask;
+    String str;
+    while ((str = slots[index]) != null)
+    {
+      if (str.equals(value))
+      {
+        recordHit(str.length());
+        return str;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    add(index, value);
+    return value;
+  }
+
+
+  /**
+   * Check whether a pooled string holds the characters in a buffer.
+   *
+   * @param str the pooled string
+   * @param hash the hash code of the buffer characters
+   * @param buf the character buffer
+   * @param off the offset of the first character
+   * @param len the number of characters
+   * @return whether they match
+   */
+  private static boolean matches(final String str, final int hash,
+                                 final char[] buf, final int off,
+                                 final int len)
+  {
+    if ((str.length() != len) || (str.hashCode() != hash))
+    {
+      return false;
+    }
+
+    for (int i = 0; i < len; ++i)
+    {
+      if (str.charAt(i) != buf[off + i])
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Add a string to the pool.
+   *
+   * @param index the free slot for the string
+   * @param str the string
+   */
+  private void add(final int index, final String str)
+  {
+    slots[index] = str;
+    ++size;
+
+    // Keep the table at most half full
+    if ((size * 2) > slots.length)
+    {
+      rehash();
+    }
+  }
+
+
+  /**
+   * Double the size of the hash table.
+   */
+  private void rehash()
+  {
+    final String[] old = slots;
+    slots = new String[old.length * 2];
+    final int mask = slots.length - 1;
+    for (String str : old)
+    {
+      if (str != null)
+      {
+        int index = mix(str.hashCode()) & mask;
+        while (slots[index] != null)
+        {
+          index = (index + 1) & mask;
+        }
+
+        slots[index] = str;
+      }
+    }
+  }
+
+
+  /**
+   * Spread the bits of a hash code, since String hash codes of
+   * similar names differ mostly in the low bits.
+   *
+   * @param hash the hash code
+   * @return the mixed hash code
+   */
+  private static int mix(final int hash)
+  {
+    final int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16));
+  }
+
+
+  /**
+   * Record a lookup that found an existing string.
+   *
+   * @param len the length of the string
+   */
+  private void recordHit(final int len)
+  {
+    ++hits;
+    bytesSaved += estimateSize(len);
+  }
+
+
+  /**
+   * Estimate the heap size of a string of the specified length:
+   * the String object plus its array, on a 64-bit JVM with
+   * compressed references and compact (Latin-1) strings.
+   *
+   * @param len the length of the string
+   * @return the estimated size, in bytes
+   */
+  private static long estimateSize(final int len)
+  {
+    return (24L + ((16L + len + 7L) & ~7L));
+  }
+
+
+  /**
+   * Add the counts from another pool to this one, such as the
+   * pool of another chunk of the same file.  Strings found in both
+   * pools are counted in each.
+   *
+   * @param other the other pool
+   */
+  public void addCounts(final StringPool other)
+  {
+    size += other.size;
+    hits += other.hits;
+    bytesSaved += other.bytesSaved;
+  }
+
+
+  /**
+   * Return the number of distinct strings in the pool.
+   *
+   * @return the number of distinct strings
+   */
+  public int getSize()
+  {
+    return size;
+  }
+
+
+  /**
+   * Return the number of lookups that found an existing string.
+   *
+   * @return the number of shared strings
+   */
+  public long getHits()
+  {
+    return hits;
+  }
+
+
+  /**
+   * Return the estimated number of bytes saved by sharing strings.
+   *
+   * @return the estimated bytes saved
+   */
+  public long getBytesSaved()
+  {
+    return bytesSaved;
+  }
+}
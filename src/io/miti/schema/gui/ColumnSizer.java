@@ -0,0 +1,89 @@
+package io.miti.schema.gui;
+
+import java.awt.Component;
+
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
+
+/**
+ * Sizes the columns of a grid to fit their contents.  Rendering every
+ * cell to measure it would take as long as painting the whole grid,
+ * so only the header and a sample of rows spread evenly through the
+ * grid are measured.
+ */
+public final class ColumnSizer
+{
+  /** The most rows measured for each column. */
+  private static final int MAX_SAMPLE = 200;
+
+  /** The padding added to each column. */
+  private static final int PADDING = 8;
+
+
+  /**
+   * Default constructor.
+   */
+  private ColumnSizer()
+  {
+    super();
+  }
+
+
+  /**
+   * Set the preferred width of each column of a grid to the width
+   * of its widest sampled cell.
+   *
+   * @param table the grid
+   */
+  public static void sizeColumns(final JTable table)
+  {
+    final int rows = table.getRowCount();
+    final int step = Math.max(1, rows / MAX_SAMPLE);
+    final int columns = table.getColumnCount();
+    for (int col = 0; col < columns; ++col)
+    {
+      final TableColumn column = table.getColumnModel().getColumn(col);
+      TableCellRenderer renderer = column.getHeaderRenderer();
+      if (renderer == null)
+      {
+        renderer = table.getTableHeader().getDefaultRenderer();
+      }
+
+      int width = renderer.getTableCellRendererComponent(table,
+                     column.getHeaderValue(), false, false, -1, col)
+                     .getPreferredSize().width;
+
+      for (int row = 0; row < rows; row += step)
+      {
+        width = Math.max(width, getCellWidth(table, row, col));
+      }
+
+      // The sample may skip the last row
+      if (rows > 0)
+      {
+        width = Math.max(width, getCellWidth(table, rows - 1, col));
+      }
+
+      column.setPreferredWidth(width + PADDING);
+    }
+  }
+
+
+  /**
+   * Return the preferred width of a cell.
+   *
+   * @param table the grid
+   * @param row the row of the cell
+   * @param col the column of the cell
+   * @return the width of the cell
+   */
+  private static int getCellWidth(final JTable table, final int row,
+                                  final int col)
+  {
+    Component comp = table.getCellRenderer(row, col)
+        .getTableCellRendererComponent(table, table.getValueAt(row, col),
+                                       false, false, row, col);
+    return comp.getPreferredSize().width;
+  }
+}
@@ -235,7 +235,7 @@ public final class MousePopupListener extends MouseAdapter
       final int currItem = tableList.locationToIndex(point);
       if (currItem >= 0)
       {
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(currItem);
         Utility.copyToClipboard(item);
       }
@@ -255,14 +255,14 @@ public final class MousePopupListener extends MouseAdapter
       {
         StringBuilder sb = new StringBuilder(50);
         
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(sel[0]);
         sb.append(item);
         
         for (int i = 1; i < len; ++i)
         {
           sb.append(EOLN);
-          item = (String) ((TableListModel)
+          item = ((TableListModel)
               tableList.getModel()).getElementAt(sel[i]);
           sb.append(item);
         }
@@ -285,14 +285,14 @@ public final class MousePopupListener extends MouseAdapter
       {
         StringBuilder sb = new StringBuilder(50);
         
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(0);
         sb.append(item);
         
         for (int i = 1; i < len; ++i)
         {
           sb.append(EOLN);
-          item = (String) ((TableListModel)
+          item = ((TableListModel)
               tableList.getModel()).getElementAt(i);
           sb.append(item);
         }
@@ -315,7 +315,7 @@ public final class MousePopupListener extends MouseAdapter
       if (currItem >= 0)
       {
         // Get the field name
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(currItem);
         StringBuilder sb = new StringBuilder(100);
         sb.append(item).append(EOLN);
@@ -425,7 +425,7 @@ public final class MousePopupListener extends MouseAdapter
       {
         StringBuilder sb = new StringBuilder(50);
         
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(sel[0]);
         sb.append(item).append(EOLN);
         sb.append(isShift ? getItemDetailsMD(item) : getItemDetails(item));
@@ -433,7 +433,7 @@ public final class MousePopupListener extends MouseAdapter
         for (int i = 1; i < len; ++i)
         {
           sb.append(EOLN);
-          item = (String) ((TableListModel)
+          item = ((TableListModel)
               tableList.getModel()).getElementAt(sel[i]);
           sb.append(item).append(EOLN);
           sb.append(isShift ? getItemDetailsMD(item) : getItemDetails(item));
@@ -458,7 +458,7 @@ public final class MousePopupListener extends MouseAdapter
       {
         StringBuilder sb = new StringBuilder(50);
         
-        String item = (String) ((TableListModel)
+        String item = ((TableListModel)
             tableList.getModel()).getElementAt(0);
         sb.append(item).append(EOLN);
         sb.append(isShift ? getItemDetailsMD(item) : getItemDetails(item));
@@ -466,7 +466,7 @@ public final class MousePopupListener extends MouseAdapter
         for (int i = 1; i < len; ++i)
         {
           sb.append(EOLN);
-          item = (String) ((TableListModel)
+          item = ((TableListModel)
               tableList.getModel()).getElementAt(i);
           sb.append(item).append(EOLN);
           sb.append(isShift ? getItemDetailsMD(item) : getItemDetails(item));
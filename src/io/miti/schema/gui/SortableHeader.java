@@ -0,0 +1,111 @@
+package io.miti.schema.gui;
+
+import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.JLabel;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.table.JTableHeader;
+import javax.swing.table.TableCellRenderer;
+
+import io.miti.schema.model.TableTableModel;
+
+/**
+ * Sorts a grid by a column when its header is clicked, and shows the
+ * sort direction in the header.  The sorting is done by the grid's
+ * TableTableModel, which keeps a permutation of the rows for each
+ * column, rather than by a RowSorter, which would compare the cell
+ * values as objects on every sort.
+ */
+public final class SortableHeader extends MouseAdapter
+  implements TableCellRenderer
+{
+  /** The grid. */
+  private JTable table = null;
+
+  /** The header's original renderer. */
+  private TableCellRenderer renderer = null;
+
+
+  /**
+   * Constructor.
+   *
+   * @param grid the grid, using a TableTableModel
+   */
+  private SortableHeader(final JTable grid)
+  {
+    table = grid;
+    renderer = grid.getTableHeader().getDefaultRenderer();
+  }
+
+
+  /**
+   * Make a grid sortable by clicking its column headers.
+   *
+   * @param grid the grid, using a TableTableModel
+   */
+  public static void install(final JTable grid)
+  {
+    SortableHeader header = new SortableHeader(grid);
+    grid.getTableHeader().setDefaultRenderer(header);
+    grid.getTableHeader().addMouseListener(header);
+  }
+
+
+  @Override
+  public void mouseClicked(final MouseEvent evt)
+  {
+    if (!SwingUtilities.isLeftMouseButton(evt))
+    {
+      return;
+    }
+
+    final JTableHeader header = table.getTableHeader();
+    final int column = header.columnAtPoint(evt.getPoint());
+    if (column < 0)
+    {
+      return;
+    }
+
+    // Sorting fires a data change, which clears the selection
+    getModel().sortBy(table.convertColumnIndexToModel(column));
+    header.repaint();
+  }
+
+
+  @Override
+  public Component getTableCellRendererComponent(final JTable grid,
+                                                 final Object value,
+                                                 final boolean isSelected,
+                                                 final boolean hasFocus,
+                                                 final int row,
+                                                 final int column)
+  {
+    Component comp = renderer.getTableCellRendererComponent(grid, value,
+                         isSelected, hasFocus, row, column);
+    if (comp instanceof JLabel)
+    {
+      final TableTableModel model = getModel();
+      final boolean sorted = (grid != null) &&
+          (model.getSortColumn() == grid.convertColumnIndexToModel(column));
+      ((JLabel) comp).setIcon(!sorted ? null : UIManager.getIcon(
+          model.isAscending() ? "Table.ascendingSortIcon" : "Table.descendingSortIcon"));
+    }
+
+    return comp;
+  }
+
+
+  /**
+   * Return the grid's model.
+   *
+   * @return the model
+   */
+  private TableTableModel getModel()
+  {
+    return (TableTableModel) table.getModel();
+  }
+}
@@ -0,0 +1,16 @@
+package io.miti.schema.model;
+
+/**
+ * Interface to be notified when a background search has finished.
+ */
+public interface SearchListener
+{
+  /**
+   * The latest search requested has finished.  This is called on
+   * the event dispatch thread; the listener shows the result by
+   * passing it to TableListModel.setSubset().
+   *
+   * @param subset the subset found by the search
+   */
+  void searchFinished(final TableSubset subset);
+}
@@ -0,0 +1,204 @@
+package io.miti.schema.model;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Run the searches typed into a search field on a background thread,
+ * so typing never waits for a search.  A search starts once no key
+ * has been typed for a short time, and each new search cancels the
+ * one before it; a search that finishes after a newer one was
+ * requested is thrown away, so only the latest result is shown.
+ *
+ * All methods are called on the event dispatch thread.
+ */
+public final class SearchScheduler
+{
+  /** How long to wait after the last keystroke before searching, in ms. */
+  private static final int DEBOUNCE_DELAY = 75;
+
+  /** The list model to search. */
+  private final TableListModel model;
+
+  /** The listener to notify with each result. */
+  private final SearchListener listener;
+
+  /** The thread the searches run on. */
+  private final ExecutorService executor;
+
+  /** Starts the search once the typing pauses. */
+  private final Timer timer;
+
+  /**
+   * The number of the latest search requested.  A result is only
+   * shown if no search was requested after it.
+   */
+  private long generation = 0L;
+
+  /** The search text waiting for the typing to pause. */
+  private String pendingText = null;
+
+  /** The search running or queued on the background thread. */
+  private Future<?> running = null;
+
+
+  /**
+   * Constructor.
+   *
+   * @param listModel the list model to search
+   * @param searchListener the listener to notify with each result
+   * @param name the name of the background thread
+   */
+  public SearchScheduler(final TableListModel listModel,
+                         final SearchListener searchListener,
+                         final String name)
+  {
+    model = listModel;
+    listener = searchListener;
+    executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(final Runnable r)
+      {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    timer = new Timer(DEBOUNCE_DELAY, new ActionListener()
+    {
+      @Override
+      public void actionPerformed(final ActionEvent evt)
+      {
+        startSearch();
+      }
+    });
+    timer.setRepeats(false);
+  }
+
+
+  /**
+   * Search for the text once the typing pauses.  Keys that don't
+   * change the text, such as the arrow keys, don't start a search.
+   *
+   * @param text the search text
+   */
+  public void search(final String text)
+  {
+    if ((pendingText == null) && (running == null) && model.isBasedOn(text))
+    {
+      return;
+    }
+
+    cancel();
+    pendingText = text;
+    timer.restart();
+  }
+
+
+  /**
+   * Search for the text now, without waiting for the typing to pause.
+   *
+   * @param text the search text
+   */
+  public void searchNow(final String text)
+  {
+    cancel();
+    pendingText = text;
+    startSearch();
+  }
+
+
+  /**
+   * Cancel any search waiting or running, such as before the list
+   * is rebuilt from a reloaded cache.
+   */
+  public void cancel()
+  {
+    timer.stop();
+    pendingText = null;
+    ++generation;
+    if (running != null)
+    {
+      running.cancel(true);
+      running = null;
+    }
+  }
+
+
+  /**
+   * Start the pending search on the background thread.
+   */
+  private void startSearch()
+  {
+    final String text = pendingText;
+    if (text == null)
+    {
+      return;
+    }
+
+    pendingText = null;
+    final long searchGeneration = ++generation;
+    running = executor.submit(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        // A newer search may have been requested while this one was
+        // queued
+        if (Thread.currentThread().isInterrupted())
+        {
+          return;
+        }
+
+        // A search cancelled while running is thrown away, without
+        // being added to the history or the cached results
+        final TableSubset subset;
+        try
+        {
+          subset = model.search(text);
+        }
+        catch (CancellationException e)
+        {
+          return;
+        }
+
+        SwingUtilities.invokeLater(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            publish(searchGeneration, subset);
+          }
+        });
+      }
+    });
+  }
+
+
+  /**
+   * Show the result of a search, unless a newer one was requested.
+   *
+   * @param searchGeneration the number of the search
+   * @param subset the subset found by the search
+   */
+  private void publish(final long searchGeneration, final TableSubset subset)
+  {
+    if (searchGeneration != generation)
+    {
+      return;
+    }
+
+    running = null;
+    listener.searchFinished(subset);
+  }
+}
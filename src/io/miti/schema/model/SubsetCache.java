@@ -0,0 +1,261 @@
+package io.miti.schema.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.miti.schema.cache.DBCache;
+
+/**
+ * A least-recently-used cache of search results, shared by the
+ * tables and columns lists, so flipping back to an earlier search
+ * doesn't search the index again.  Entries are keyed by the list
+ * and the normalized search tokens, and hold the matching name IDs
+ * in a trimmed int array.  The cache is bounded by the estimated
+ * size of its entries rather than their number, since the result
+ * of a broad search on the columns list can be thousands of times
+ * the size of a narrow one.
+ *
+ * Results are only valid for the DBCache they were found in, so
+ * each entry records its cache, and entries for an earlier cache
+ * are treated as misses.
+ */
+public final class SubsetCache
+{
+  /** The most bytes held by the cached results. */
+  private static final long MAX_BYTES = 8L * 1024L * 1024L;
+
+  /** Results larger than this fraction (1/n) of the budget aren't cached. */
+  private static final int MAX_ENTRY_FRACTION = 4;
+
+  /** The estimated size of an entry, not counting its arrays. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  /** The single instance of this class. */
+  private static final SubsetCache instance = new SubsetCache();
+
+  /** The cached results, in access order (least recent first). */
+  private final Map<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+  /** The estimated size of the cached results. */
+  private long bytes = 0L;
+
+  /** The number of lookups that found a result. */
+  private long hits = 0L;
+
+  /** The number of lookups that found no result. */
+  private long misses = 0L;
+
+  /** The number of results dropped to stay within the budget. */
+  private long evictions = 0L;
+
+
+  /**
+   * A cached search result.
+   */
+  private static final class Entry
+  {
+    /** The cache the IDs refer to. */
+    final DBCache cache;
+
+    /** The matching name IDs. */
+    final int[] ids;
+
+    /** The estimated size of the entry. */
+    final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param dbCache the cache the IDs refer to
+     * @param idList the matching name IDs
+     * @param key the key of the entry
+     */
+    Entry(final DBCache dbCache, final int[] idList, final String key)
+    {
+      cache = dbCache;
+      ids = idList;
+      size = estimateSize(key, idList.length);
+    }
+  }
+
+
+  /**
+   * Default constructor.
+   */
+  private SubsetCache()
+  {
+    super();
+  }
+
+
+  /**
+   * Return the single instance of this class.
+   *
+   * @return the subset cache
+   */
+  public static SubsetCache getInstance()
+  {
+    return instance;
+  }
+
+
+  /**
+   * Return the subset for a search, if it's cached for the current
+   * DBCache.
+   *
+   * @param showTables whether the search is on tables or columns
+   * @param table the search string
+   * @return the subset, or null if it's not cached
+   */
+  synchronized TableSubset get(final boolean showTables, final String table)
+  {
+    final TableKey key = new TableKey(table);
+    final String mapKey = getMapKey(showTables, key);
+    final Entry entry = entries.get(mapKey);
+    final DBCache cache = DBCache.getInstance();
+    if ((entry == null) || (entry.cache != cache))
+    {
+      if (entry != null)
+      {
+        remove(mapKey);
+      }
+
+      ++misses;
+      return null;
+    }
+
+    ++hits;
+    return new TableSubset(showTables, key, cache, entry.ids);
+  }
+
+
+  /**
+   * Add a subset to the cache, dropping the least recently used
+   * results to stay within the budget.
+   *
+   * @param subset the subset
+   */
+  synchronized void put(final TableSubset subset)
+  {
+    final String mapKey = getMapKey(subset.isStoreTables(), subset.getKey());
+    final Entry entry = new Entry(subset.getCache(), subset.getIds(), mapKey);
+    if (entry.size > (MAX_BYTES / MAX_ENTRY_FRACTION))
+    {
+      return;
+    }
+
+    remove(mapKey);
+    entries.put(mapKey, entry);
+    bytes += entry.size;
+
+    Iterator<Entry> iter = entries.values().iterator();
+    while ((bytes > MAX_BYTES) && iter.hasNext())
+    {
+      bytes -= iter.next().size;
+      iter.remove();
+      ++evictions;
+    }
+  }
+
+
+  /**
+   * Drop the results for any cache other than the specified one,
+   * such as after the cache is reloaded.
+   *
+   * @param cache the current cache
+   */
+  public synchronized void retain(final DBCache cache)
+  {
+    Iterator<Entry> iter = entries.values().iterator();
+    while (iter.hasNext())
+    {
+      final Entry entry = iter.next();
+      if (entry.cache != cache)
+      {
+        bytes -= entry.size;
+        iter.remove();
+      }
+    }
+  }
+
+
+  /**
+   * Remove an entry, if it's in the cache.
+   *
+   * @param mapKey the key of the entry
+   */
+  private void remove(final String mapKey)
+  {
+    final Entry old = entries.remove(mapKey);
+    if (old != null)
+    {
+      bytes -= old.size;
+    }
+  }
+
+
+  /**
+   * Return the key of a search in the map.
+   *
+   * @param showTables whether the search is on tables or columns
+   * @param key the search key
+   * @return the map key
+   */
+  private static String getMapKey(final boolean showTables, final TableKey key)
+  {
+    return ((showTables ? "T:" : "C:") + key.getNormalized());
+  }
+
+
+  /**
+   * Estimate the heap size of an entry: the map entry and key,
+   * and the array of IDs.
+   *
+   * @param key the key of the entry
+   * @param count the number of IDs
+   * @return the estimated size, in bytes
+   */
+  private static long estimateSize(final String key, final int count)
+  {
+    return (ENTRY_OVERHEAD + (2L * key.length()) + 16L + (4L * count));
+  }
+
+
+  /**
+   * Return the number of lookups that found a result.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+
+  /**
+   * Return the number of lookups that found no result.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+
+  /**
+   * Return a description of the cache and its hit rate.
+   *
+   * @return the statistics
+   */
+  public synchronized String getStatistics()
+  {
+    final long lookups = hits + misses;
+    final long rate = (lookups == 0L) ? 0L : ((100L * hits) / lookups);
+    return String.format("Search cache: %d hits, %d misses (%d%% hits), " +
+        "%d results in %,d KB, %d evicted", hits, misses, rate,
+        entries.size(), (bytes + 1023L) / 1024L, evictions);
+  }
+}
@@ -1,9 +1,12 @@
 package io.miti.schema.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import io.miti.schema.search.GlobSearch;
+
 /**
  * The search key data for a table.
  * 
@@ -12,6 +15,12 @@ import java.util.StringTokenizer;
  */
 public final class TableKey
 {
+	/** The prefix for a fuzzy search. */
+	public static final String FUZZY_PREFIX = "~";
+	
+	/** The prefix for a search by whole words. */
+	public static final String WORD_PREFIX = "=";
+	
 	/**
 	 * The list of key data.
 	 */
@@ -22,6 +31,22 @@ public final class TableKey
 	 */
 	private String lastTable = null;
 	
+	/**
+	 * Whether to match the tokens approximately, set by starting
+	 * the search with a tilde.
+	 */
+	private boolean fuzzy = false;
+	
+	/**
+	 * Whether the tokens must be whole words of the name (the parts
+	 * between underscores and digits), set by starting the search
+	 * with an equals sign.
+	 */
+	private boolean wholeWords = false;
+	
+	/** Whether any token is a glob pattern, matching whole names. */
+	private boolean glob = false;
+	
 	
 	/**
 	 * Default constructor.
@@ -55,13 +80,26 @@ public final class TableKey
 	 */
 	private void buildKey(final String code)
 	{
-		StringTokenizer st = new StringTokenizer(code, " ");
+		String text = code.trim();
+		if (text.startsWith(FUZZY_PREFIX))
+		{
+			fuzzy = true;
+			text = text.substring(FUZZY_PREFIX.length());
+		}
+		else if (text.startsWith(WORD_PREFIX))
+		{
+			wholeWords = true;
+			text = text.substring(WORD_PREFIX.length());
+		}
+		
+		StringTokenizer st = new StringTokenizer(text, " ");
 		while (st.hasMoreTokens())
 		{
 			String token = st.nextToken().trim();
 			if (token.length() > 0)
 			{
 			  key.add(token.toUpperCase());
+			  glob = glob || GlobSearch.isPattern(token);
 			}
 		}
 	}
@@ -81,10 +119,12 @@ public final class TableKey
 			return true;
 		}
 		
+		// Index the list, so no iterator is created for each table
 		boolean rc = true;
-		for (String code : key)
+		final int size = key.size();
+		for (int i = 0; i < size; ++i)
 		{
-			if (!table.contains(code))
+			if (!table.contains(key.get(i)))
 			{
 				rc = false;
 				break;
@@ -95,6 +135,135 @@ public final class TableKey
 	}
 	
 	
+	/**
+	 * Return the search tokens, upper-cased.
+	 * 
+	 * @return the read-only list of tokens
+	 */
+	public List<String> getTokens()
+	{
+		return Collections.unmodifiableList(key);
+	}
+	
+	
+	/**
+	 * Return the tokens in a canonical form, so searches matching
+	 * the same names share a key.  Repeated tokens, and tokens found
+	 * inside another token, are dropped, and the rest are sorted and
+	 * joined with spaces.
+	 * 
+	 * @return the normalized tokens
+	 */
+	public String getNormalized()
+	{
+		// A fuzzy search ranks names by every token, and a word
+		// isn't found by finding a longer word, so none is redundant
+		if (fuzzy || wholeWords)
+		{
+			List<String> tokens = new ArrayList<String>(key);
+			Collections.sort(tokens);
+			StringBuilder sb = new StringBuilder(fuzzy ? FUZZY_PREFIX : WORD_PREFIX);
+			for (String token : tokens)
+			{
+				sb.append(' ').append(token);
+			}
+			
+			return sb.toString();
+		}
+		
+		List<String> tokens = new ArrayList<String>(key.size());
+		for (int i = 0; i < key.size(); ++i)
+		{
+			final String code = key.get(i);
+			boolean redundant = false;
+			for (int j = 0; (j < key.size()) && !redundant; ++j)
+			{
+				// Patterns match whole names, so only a repeat of one
+				// is redundant
+				final String other = key.get(j);
+				if (other.equals(code))
+				{
+					redundant = (j < i);
+				}
+				else if (!GlobSearch.isPattern(code) && !GlobSearch.isPattern(other))
+				{
+					redundant = other.contains(code);
+				}
+			}
+			
+			if (!redundant)
+			{
+				tokens.add(code);
+			}
+		}
+		
+		Collections.sort(tokens);
+		StringBuilder sb = new StringBuilder(32);
+		for (int i = 0; i < tokens.size(); ++i)
+		{
+			if (i > 0)
+			{
+				sb.append(' ');
+			}
+			sb.append(tokens.get(i));
+		}
+		
+		return sb.toString();
+	}
+	
+	
+	/**
+	 * Return whether this key has the same tokens as another key.
+	 * 
+	 * @param other the other key
+	 * @return whether the tokens are the same
+	 */
+	public boolean hasSameTokens(final TableKey other)
+	{
+		return ((fuzzy == other.fuzzy) && (wholeWords == other.wholeWords) &&
+		        key.equals(other.key));
+	}
+	
+	
+	/**
+	 * Return whether this key narrows another key: every token of
+	 * the other key is part of one of this key's tokens, so every
+	 * name matching this key also matches the other key.
+	 * 
+	 * @param other the other key
+	 * @return whether this key narrows the other key
+	 */
+	public boolean narrows(final TableKey other)
+	{
+		// Fuzzy results are ranked and cut off, so they can't be
+		// filtered, and an exact search can't be filtered for them;
+		// a word or pattern must match a whole word or name, so it
+		// isn't narrowed by adding characters
+		if (fuzzy || other.fuzzy || wholeWords || other.wholeWords ||
+		    glob || other.glob)
+		{
+			return false;
+		}
+		
+		for (int i = 0; i < other.key.size(); ++i)
+		{
+			final String code = other.key.get(i);
+			boolean found = false;
+			for (int j = 0; (j < key.size()) && !found; ++j)
+			{
+				found = key.get(j).contains(code);
+			}
+			
+			if (!found)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	
 	/**
 	 * Print the key data.
 	 */
@@ -108,6 +277,39 @@ public final class TableKey
 	}
 
 	
+	/**
+	 * Return whether the tokens are matched approximately.
+	 * 
+	 * @return whether this is a fuzzy search
+	 */
+	public boolean isFuzzy()
+	{
+		return fuzzy;
+	}
+	
+	
+	/**
+	 * Return whether the tokens must be whole words of the name.
+	 * 
+	 * @return whether this is a search by whole words
+	 */
+	public boolean isWholeWords()
+	{
+		return wholeWords;
+	}
+	
+	
+	/**
+	 * Return whether any token is a glob pattern.
+	 * 
+	 * @return whether the key has a pattern
+	 */
+	public boolean hasPattern()
+	{
+		return glob;
+	}
+	
+	
 	/**
 	 * Return whether the key is empty.
 	 * 
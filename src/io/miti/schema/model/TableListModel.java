@@ -1,30 +1,48 @@
 package io.miti.schema.model;
 
-import javax.swing.DefaultListModel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+import io.miti.schema.cache.DBCache;
 
 /**
- * The model for the JList showing the tables.
+ * The model for the JList showing the tables.  The names are read
+ * from the current subset as the list paints them, so the model holds
+ * nothing per row, and a change of subset is reported to the list as
+ * the rows changed, added or removed.
  * 
  * @author mike
  * @version 1.0
  */
-public class TableListModel extends DefaultListModel
+public class TableListModel extends AbstractListModel<String>
 {
 	/** Default serial ID. */
 	private static final long serialVersionUID = 1L;
 	
-	/** The current subset key. */
+	/** The current subset key.  This is null until the cache is loaded. */
 	private TableSubset subset = null;
 	
 	/** Whether to store tables or columns. */
 	private boolean storeTables = false;
 	
+	/** The most subsets kept in the search history. */
+	private static final int MAX_HISTORY = 32;
+	
+	/**
+	 * The subsets for the searches leading to the current one, each
+	 * narrowing the one before it, so a longer search can filter the
+	 * last result, and backspacing can reuse an earlier one.
+	 */
+	private final List<TableSubset> history = new ArrayList<TableSubset>(MAX_HISTORY);
+	
 	/**
 	 * Default constructor.
 	 */
 	public TableListModel()
 	{
-		subset = new TableSubset(storeTables, "");
+		subset = createSubset("");
 	}
 	
 	
@@ -36,7 +54,7 @@ public class TableListModel extends DefaultListModel
 	public TableListModel(final boolean showTables)
 	{
 	  storeTables = showTables;
-	  subset = new TableSubset(storeTables, "");
+	  subset = createSubset("");
 	}
 	
 	
@@ -45,7 +63,35 @@ public class TableListModel extends DefaultListModel
 	 */
 	public TableListModel(final String table)
 	{
-		subset = new TableSubset(storeTables, table);
+		subset = createSubset(table);
+	}
+	
+	
+	/**
+	 * Create the subset for the key, if the cache has been loaded.
+	 * 
+	 * @param table the table name
+	 * @return the subset, or null if the cache is still loading
+	 */
+	private TableSubset createSubset(final String table)
+	{
+		return (DBCache.isLoaded() ? new TableSubset(storeTables, table) : null);
+	}
+	
+	
+	/**
+	 * Rebuild the subset once the cache has finished loading.
+	 * 
+	 * @param table the table name
+	 */
+	public void reload(final String table)
+	{
+		synchronized (history)
+		{
+			history.clear();
+		}
+		SubsetCache.getInstance().retain(DBCache.getInstance());
+		changeSubset(search(table));
 	}
 	
 	
@@ -59,16 +105,17 @@ public class TableListModel extends DefaultListModel
 	{
 		// Optimize this to check for the same codes
 		boolean redrawNeeded = false;
-		if (!subset.isBasedOn(table))
+		if (subset == null)
+		{
+		  // The cache is still loading; reload() applies the key later
+		  return redrawNeeded;
+		}
+		else if (!subset.isBasedOn(table))
 		{
-		  subset.clear();
-		  subset = new TableSubset(storeTables, table);
+		  changeSubset(search(table));
 		  
 		  // The subset changed, so we need to redraw the list
 		  redrawNeeded = true;
-		  
-		  // Let the model know the contents changed
-		  fireContentsChanged(this, 0, subset.getCount());
 		}
 		
 		// Return whether the table needs to be redrawn
@@ -76,15 +123,183 @@ public class TableListModel extends DefaultListModel
 	}
 	
 	
+	/**
+	 * Return the subset for a search, without showing it.  This may
+	 * be called on any thread; the result is shown by passing it to
+	 * setSubset() on the event dispatch thread.  If the thread is
+	 * interrupted the search stops, and the history and the cached
+	 * results are left as they were.
+	 * 
+	 * @param table the table name
+	 * @return the subset
+	 * @throws java.util.concurrent.CancellationException the thread
+	 *         was interrupted during the search
+	 */
+	public TableSubset search(final String table)
+	{
+		synchronized (history)
+		{
+			return findSubset(table);
+		}
+	}
+	
+	
+	/**
+	 * Show a subset found by search().
+	 * 
+	 * @param newSubset the subset
+	 * @return whether the list changed
+	 */
+	public boolean setSubset(final TableSubset newSubset)
+	{
+		if ((newSubset == null) || (newSubset == subset))
+		{
+			return false;
+		}
+		
+		changeSubset(newSubset);
+		return true;
+	}
+	
+	
+	/**
+	 * Replace the subset, and tell the list which rows changed: the
+	 * rows in both subsets changed, and the rest were added or removed.
+	 * 
+	 * @param newSubset the new subset
+	 */
+	private void changeSubset(final TableSubset newSubset)
+	{
+		final int oldCount = getSize();
+		subset = newSubset;
+		final int newCount = getSize();
+		
+		if (newCount < oldCount)
+		{
+			fireIntervalRemoved(this, newCount, oldCount - 1);
+		}
+		else if (newCount > oldCount)
+		{
+			fireIntervalAdded(this, oldCount, newCount - 1);
+		}
+		
+		final int common = Math.min(oldCount, newCount);
+		if (common > 0)
+		{
+			fireContentsChanged(this, 0, common - 1);
+		}
+	}
+	
+	
+	/**
+	 * Return whether the list shows the subset for a search.
+	 * 
+	 * @param table the table name
+	 * @return whether the subset is for the search
+	 */
+	public boolean isBasedOn(final String table)
+	{
+		return ((subset != null) && subset.isBasedOn(table));
+	}
+	
+	
+	/**
+	 * Return the subset for a search, reusing or filtering the
+	 * subsets of earlier searches where possible.  The caller
+	 * holds the lock on the history.
+	 * 
+	 * @param table the table name
+	 * @return the subset
+	 */
+	private TableSubset findSubset(final String table)
+	{
+		// Find the latest search the new one narrows.  The searches
+		// after it are only dropped once the new search has finished,
+		// so a cancelled search leaves the history as it was.
+		final TableKey key = new TableKey(table);
+		for (int i = history.size() - 1; i >= 0; --i)
+		{
+			final TableSubset last = history.get(i);
+			if (last.getKey().hasSameTokens(key))
+			{
+				trimHistory(i + 1);
+				return last;
+			}
+			else if (last.canRefine(key))
+			{
+				final TableSubset newSubset = searchSubset(last, table);
+				trimHistory(i + 1);
+				return addHistory(newSubset);
+			}
+		}
+		
+		final TableSubset newSubset = searchSubset(null, table);
+		trimHistory(0);
+		return addHistory(newSubset);
+	}
+	
+	
+	/**
+	 * Drop the searches at the end of the history.
+	 * 
+	 * @param size the number of searches to keep
+	 */
+	private void trimHistory(final int size)
+	{
+		history.subList(size, history.size()).clear();
+	}
+	
+	
+	/**
+	 * Return the cached result of a search, or run the search and
+	 * cache its result.
+	 * 
+	 * @param base the subset to filter, or null to search the index
+	 * @param table the table name
+	 * @return the subset
+	 */
+	private TableSubset searchSubset(final TableSubset base, final String table)
+	{
+		final SubsetCache results = SubsetCache.getInstance();
+		TableSubset newSubset = results.get(storeTables, table);
+		if (newSubset == null)
+		{
+			newSubset = (base == null) ? new TableSubset(storeTables, table) :
+			                new TableSubset(base, table);
+			results.put(newSubset);
+		}
+		
+		return newSubset;
+	}
+	
+	
+	/**
+	 * Add a subset to the end of the search history.
+	 * 
+	 * @param newSubset the subset
+	 * @return the subset
+	 */
+	private TableSubset addHistory(final TableSubset newSubset)
+	{
+		if (history.size() == MAX_HISTORY)
+		{
+			history.remove(0);
+		}
+		
+		history.add(newSubset);
+		return newSubset;
+	}
+	
+	
 	/**
 	 * Return the table name at a specified index.
 	 * 
 	 * @param index the index of the table to return
 	 */
 	@Override
-	public Object getElementAt(final int index)
+	public String getElementAt(final int index)
 	{
-		String table = subset.getTable(index);
+		String table = (subset == null) ? null : subset.getTable(index);
 		return table;
 	}
 
@@ -97,7 +312,7 @@ public class TableListModel extends DefaultListModel
 	@Override
 	public int getSize()
 	{
-		return subset.getCount();
+		return ((subset == null) ? 0 : subset.getCount());
 	}
 	
 	
@@ -118,7 +333,7 @@ public class TableListModel extends DefaultListModel
     }
     
     // If there are no rows in the subset, return -1
-    final int count = subset.getCount();
+    final int count = getSize();
     if (count <= 0)
     {
       return -1;
@@ -127,31 +342,14 @@ public class TableListModel extends DefaultListModel
     // First try to find the row matching on prevValue
     if (prevValue != null)
     {
-      int matchIndex = -1;
-      for (int i = 0; i < count; ++i)
-      {
-        if (prevValue.equals(subset.getTable(i)))
-        {
-          matchIndex = i;
-          break;
-        }
-      }
-      
-      if (matchIndex > 0)
+      final int matchIndex = subset.indexOf(prevValue);
+      if (matchIndex >= 0)
       {
         return matchIndex;
       }
     }
     
-    if (prevIndex >= count)
-    {
-      return (count - 1);
-    }
-    else if (prevIndex < count)
-    {
-      return count;
-    }
-    
-    return 0;
+    // Otherwise stay at the same row, if the list is still that long
+    return Math.min(prevIndex, count - 1);
   }
 }
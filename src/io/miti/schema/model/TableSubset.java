@@ -1,10 +1,9 @@
 package io.miti.schema.model;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
 
 import io.miti.schema.cache.DBCache;
+import io.miti.schema.search.Cancellation;
 
 /**
  * Define a subset of tables, based on search criteria.
@@ -14,15 +13,40 @@ import io.miti.schema.cache.DBCache;
  */
 public final class TableSubset
 {
+	/**
+	 * A subset is only filtered for a narrower key if it holds at
+	 * most this fraction (1/n) of all names; a larger one is cheaper
+	 * to search again through the index.
+	 */
+	private static final int REFINE_FRACTION = 4;
+	
+	/** The most names shown for a fuzzy search. */
+	private static final int MAX_RANKED = 500;
+	
 	/** The key for this subset. */
 	private TableKey key = null;
 	
-	/** The list of indexes into the table data, for this subset. */
-	private List<Integer> lookup = new ArrayList<Integer>(50);
+	/** The indexes into the table data, for this subset. */
+	private int[] lookup = null;
+	
+	/** The number of indexes used in the lookup array. */
+	private int count = 0;
 	
 	/** Whether to show tables or columns. */
 	private boolean storeTables = false;
 	
+	/**
+	 * Whether the names are ranked by how well they match, rather
+	 * than sorted.
+	 */
+	private boolean ranked = false;
+	
+	/**
+	 * The cache the indexes refer to.  A reloaded cache is only
+	 * used by subsets created after the reload.
+	 */
+	private DBCache cache = null;
+	
 	
 	/**
 	 * Default constructor.
@@ -42,11 +66,48 @@ public final class TableSubset
 	public TableSubset(final boolean showTables, final String table)
 	{
 	  storeTables = showTables;
+	  cache = DBCache.getInstance();
 		buildKey(table);
 		loadSubset();
 	}
 	
 	
+	/**
+	 * Constructor for a key that narrows the key of an earlier
+	 * subset, so only the names in that subset need to be checked.
+	 * 
+	 * @param base the earlier subset
+	 * @param table the table name
+	 */
+	public TableSubset(final TableSubset base, final String table)
+	{
+		storeTables = base.storeTables;
+		cache = base.cache;
+		buildKey(table);
+		filterSubset(base);
+	}
+	
+	
+	/**
+	 * Constructor for a cached search result.
+	 * 
+	 * @param showTables whether to show tables or columns
+	 * @param tableKey the search key
+	 * @param dbCache the cache the IDs refer to
+	 * @param ids the matching name IDs
+	 */
+	TableSubset(final boolean showTables, final TableKey tableKey,
+	            final DBCache dbCache, final int[] ids)
+	{
+		storeTables = showTables;
+		cache = dbCache;
+		key = tableKey;
+		lookup = ids;
+		count = ids.length;
+		ranked = key.isFuzzy() && !key.isEmpty();
+	}
+	
+	
 	/**
 	 * Build the key using the table name.
 	 * 
@@ -63,24 +124,90 @@ public final class TableSubset
 	 */
 	private void loadSubset()
 	{
-		// Iterate over the list and check for matches on the key
-		int index = 0;
-		Iterator<String> iter = storeTables ?
-		      DBCache.getInstance().getTableIterator() :
-		      DBCache.getInstance().getColumnIterator();
-		while (iter.hasNext())
+		// A fuzzy search checks every name, and keeps the best matches
+		if (key.isFuzzy() && !key.isEmpty())
+		{
+			lookup = (storeTables ? cache.getTableMatcher() :
+			            cache.getColumnMatcher()).search(key.getTokens(), MAX_RANKED);
+			count = lookup.length;
+			ranked = true;
+			return;
+		}
+		
+		// The names starting with a pattern's fixed prefix are found
+		// by binary search
+		if (key.hasPattern())
 		{
-			// Get the next table in the list
-			final String table = iter.next();
-			
-			// Check for a match
+			lookup = (storeTables ? cache.getTableGlobs() :
+			            cache.getColumnGlobs()).search(key.getTokens());
+			count = lookup.length;
+			return;
+		}
+		
+		// A search by whole words intersects the names using each word
+		if (key.isWholeWords())
+		{
+			lookup = (storeTables ? cache.getTableWords() :
+			            cache.getColumnWords()).search(key.getTokens());
+			count = lookup.length;
+			return;
+		}
+		
+		// The index only checks the names that contain every
+		// trigram in the key
+		lookup = (storeTables ? cache.getTableIndex() :
+		            cache.getColumnIndex()).search(key.getTokens());
+		count = lookup.length;
+	}
+	
+	
+	/**
+	 * Load the subset by checking each name in an earlier subset.
+	 * 
+	 * @param base the earlier subset
+	 */
+	private void filterSubset(final TableSubset base)
+	{
+		final Thread searcher = Thread.currentThread();
+		lookup = new int[base.count];
+		for (int i = 0; i < base.count; ++i)
+		{
+			Cancellation.check(searcher, i);
+			final int index = base.lookup[i];
+			final String table = storeTables ?
+			      cache.getTable(index) : cache.getColumn(index);
 			if (key.tableMatches(table))
 			{
-				lookup.add(Integer.valueOf(index));
+				lookup[count++] = index;
 			}
-			
-			++index;
 		}
+		
+		// Trim the array, since the subset may be cached
+		if (count < lookup.length)
+		{
+			lookup = Arrays.copyOf(lookup, count);
+		}
+	}
+	
+	
+	/**
+	 * Return whether a key can be searched for by filtering this
+	 * subset.  The key must narrow this subset's key, and this subset
+	 * must be small enough that checking each of its names costs
+	 * less than searching the index.
+	 * 
+	 * @param other the key
+	 * @return whether to filter this subset for the key
+	 */
+	public boolean canRefine(final TableKey other)
+	{
+		if (key.isEmpty() || !other.narrows(key))
+		{
+			return false;
+		}
+		
+		final int total = storeTables ? cache.getTableCount() : cache.getColumnCount();
+		return (count <= (total / REFINE_FRACTION));
 	}
 	
 	
@@ -91,10 +218,55 @@ public final class TableSubset
 	 */
 	public int getCount()
 	{
-		return lookup.size();
+		return count;
 	}
 
 	
+	/**
+	 * Return the matching name IDs.  The array must not be changed.
+	 * 
+	 * @return the name IDs
+	 */
+	int[] getIds()
+	{
+		return lookup;
+	}
+	
+	
+	/**
+	 * Return the cache the name IDs refer to.
+	 * 
+	 * @return the cache
+	 */
+	DBCache getCache()
+	{
+		return cache;
+	}
+	
+	
+	/**
+	 * Return whether this subset holds tables or columns.
+	 * 
+	 * @return true for tables, false for columns
+	 */
+	boolean isStoreTables()
+	{
+		return storeTables;
+	}
+	
+	
+	/**
+	 * Return whether the names are ranked by how well they match
+	 * a fuzzy search, rather than sorted by name.
+	 * 
+	 * @return whether the names are ranked
+	 */
+	public boolean isRanked()
+	{
+		return ranked;
+	}
+	
+	
 	/**
 	 * Return the key data.
 	 * 
@@ -115,8 +287,55 @@ public final class TableSubset
 	public String getTable(final int index)
 	{
 	  return (storeTables ?
-	      DBCache.getInstance().getTable(lookup.get(index)) :
-	      DBCache.getInstance().getColumn(lookup.get(index)));
+	      cache.getTable(lookup[index]) :
+	      cache.getColumn(lookup[index]));
+	}
+	
+	
+	/**
+	 * Return the index of a name in the subset.  The names are in the
+	 * order of their IDs, which is their sorted order, so they're
+	 * binary searched; ranked names have to be scanned.
+	 * 
+	 * @param name the name to find
+	 * @return the index of the name, or -1 if it's not in the subset
+	 */
+	public int indexOf(final String name)
+	{
+		if (ranked)
+		{
+			for (int i = 0; i < count; ++i)
+			{
+				if (name.equals(getTable(i)))
+				{
+					return i;
+				}
+			}
+	
+			return -1;
+		}
+	
+		int low = 0;
+		int high = count - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int cmp = getTable(mid).compareTo(name);
+			if (cmp < 0)
+			{
+				low = mid + 1;
+			}
+			else if (cmp > 0)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+	
+		return -1;
 	}
 	
 	
@@ -148,7 +367,7 @@ public final class TableSubset
 	 */
 	public void clear()
 	{
-		lookup.clear();
 		lookup = null;
+		count = 0;
 	}
 }
@@ -1,26 +1,43 @@
 package io.miti.schema.model;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 
-import io.miti.schema.dbutil.TableInfo;
 import io.miti.schema.cache.DBCache;
+import io.miti.schema.cache.RecordSet;
 
-public final class TableTableModel extends DefaultTableModel
+/**
+ * The model for the grid showing the columns of a table, or the
+ * tables with a column name.  The cells are read straight from the
+ * cache's record arrays.  Sorting by a column never reorders the
+ * records: the first sort by a column builds a permutation of the
+ * rows (by sorting the column's values packed with the row numbers
+ * into longs, so no objects are compared), and the rows are shown
+ * through it, read backwards for a descending sort.
+ */
+public final class TableTableModel extends AbstractTableModel
 {
   /** Default version UID. */
   private static final long serialVersionUID = 1L;
   
+  /** The number of columns. */
+  private static final int COLUMN_COUNT = 5;
+  
   /** Whether we're showing tables or columns. */
   private boolean showTables = false;
   
-  /** The data we're showing. */
-  private List<TableInfo> info = null;
+  /** The records we're showing, or null for none. */
+  private RecordSet rows = null;
+  
+  /** The row permutation for sorting by each column, built when needed. */
+  private int[][] permutations = new int[COLUMN_COUNT][];
+  
+  /** The column the rows are sorted by, or -1 for the natural order. */
+  private int sortColumn = -1;
   
-  /** The number of rows. */
-  private int rowCount = 0;
+  /** Whether the sort is ascending. */
+  private boolean ascending = true;
   
   
   /**
@@ -46,14 +63,14 @@ public final class TableTableModel extends DefaultTableModel
   @Override
   public int getRowCount()
   {
-    return rowCount;
+    return ((rows == null) ? 0 : rows.size());
   }
-
-
+  
+  
   @Override
   public int getColumnCount()
   {
-    return 5;
+    return COLUMN_COUNT;
   }
   
   
@@ -79,11 +96,11 @@ public final class TableTableModel extends DefaultTableModel
     {
       return Integer.class;
     }
-    
+  
     return String.class;
   }
-
-
+  
+  
   @Override
   public boolean isCellEditable(int row, int column)
   {
@@ -94,49 +111,171 @@ public final class TableTableModel extends DefaultTableModel
   @Override
   public Object getValueAt(int row, int column)
   {
-    if (info == null)
+    if (rows == null)
     {
       return "";
     }
-    
-    final TableInfo item = info.get(row);
+  
+    final int index = getRecordRow(row);
     switch (column)
     {
-      case 0: return Integer.valueOf(item.order);
-      case 1: return (showTables ? item.columnName : item.tableName);
-      case 2: return item.columnType;
-      case 3: return (item.isNullable ? "" : "NOT NULL");
-      case 4: return (item.isPK ? "YES" : "");
+      case 0: return Integer.valueOf(rows.getOrder(index));
+      case 1: return (showTables ? rows.getColumnName(index) : rows.getTableName(index));
+      case 2: return rows.getType(index);
+      case 3: return (rows.isNullable(index) ? "" : "NOT NULL");
+      case 4: return (rows.isPrimaryKey(index) ? "YES" : "");
       default: return "";
     }
   }
   
   
+  /**
+   * Return the row of the record set shown in a row of the grid.
+   * 
+   * @param row the row of the grid
+   * @return the row of the record set
+   */
+  private int getRecordRow(final int row)
+  {
+    if (sortColumn < 0)
+    {
+      return row;
+    }
+  
+    final int[] perm = getPermutation(sortColumn);
+    return (ascending ? perm[row] : perm[perm.length - 1 - row]);
+  }
+  
+  
+  /**
+   * Return the permutation that sorts the rows by a column, building
+   * it the first time.  Ties keep their natural order.
+   * 
+   * @param column the column
+   * @return the row numbers, in sorted order
+   */
+  private int[] getPermutation(final int column)
+  {
+    if (permutations[column] != null)
+    {
+      return permutations[column];
+    }
+  
+    final int count = rows.size();
+    long[] packed = new long[count];
+    for (int row = 0; row < count; ++row)
+    {
+      packed[row] = (((long) getSortKey(row, column)) << 32) | row;
+    }
+    Arrays.sort(packed);
+  
+    int[] perm = new int[count];
+    for (int i = 0; i < count; ++i)
+    {
+      perm[i] = (int) packed[i];
+    }
+  
+    permutations[column] = perm;
+    return perm;
+  }
+  
+  
+  /**
+   * Return the value a row is sorted by for a column.  Names are
+   * sorted by ID, which is their alphabetical order; the flags are
+   * sorted by the text shown for them.
+   * 
+   * @param row the row of the record set
+   * @param column the column
+   * @return the sort key (not negative)
+   */
+  private int getSortKey(final int row, final int column)
+  {
+    switch (column)
+    {
+      case 0: return Math.max(rows.getOrder(row), 0);
+      case 1: return (showTables ? rows.getColumnId(row) : rows.getTableId(row));
+      case 2: return rows.getTypeRank(row);
+      case 3: return (rows.isNullable(row) ? 0 : 1);
+      case 4: return (rows.isPrimaryKey(row) ? 1 : 0);
+      default: return 0;
+    }
+  }
+  
+  
+  /**
+   * Sort the rows by a column.  Sorting by the same column again
+   * reverses the order.
+   * 
+   * @param column the column
+   */
+  public void sortBy(final int column)
+  {
+    if ((column < 0) || (column >= COLUMN_COUNT))
+    {
+      return;
+    }
+  
+    ascending = (column != sortColumn) || !ascending;
+    sortColumn = column;
+    refresh();
+  }
+  
+  
+  /**
+   * Return the column the rows are sorted by.
+   * 
+   * @return the column, or -1 if they're in their natural order
+   */
+  public int getSortColumn()
+  {
+    return sortColumn;
+  }
+  
+  
+  /**
+   * Return whether the sort is ascending.
+   * 
+   * @return whether the sort is ascending
+   */
+  public boolean isAscending()
+  {
+    return ascending;
+  }
+  
+  
   /**
    * Clear the data since the list selection was cleared.
    */
   public void clearTable()
   {
-    rowCount = 0;
-    refresh();
+    setRows(null);
   }
   
   
   /**
-   * The list selection changed, so update the table.
+   * The list selection changed, so update the table.  The columns
+   * of a table are in column order, and the tables with a column
+   * name are in table name order, until a column is sorted.
    * 
    * @param key the table or column name
    */
-  public void updateKey(final String key, final boolean sortList)
+  public void updateKey(final String key)
   {
-    info = (showTables) ? DBCache.getInstance().getTableInfo(key) :
-             DBCache.getInstance().getColumnInfo(key);
-    if (sortList)
-    {
-      Collections.sort(info);
-    }
-    
-    rowCount = info.size();
+    setRows(showTables ? DBCache.getInstance().getTableRecords(key) :
+              DBCache.getInstance().getColumnRecords(key));
+  }
+  
+  
+  /**
+   * Show a new record set, sorted by the current sort column.
+   * 
+   * @param records the records, or null for none
+   */
+  private void setRows(final RecordSet records)
+  {
+    rows = records;
+    Arrays.fill(permutations, null);
     refresh();
   }
   
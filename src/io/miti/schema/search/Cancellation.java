@@ -0,0 +1,40 @@
+package io.miti.schema.search;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Stops a search when the thread that started it is interrupted,
+ * as happens when a newer search replaces it.  The loops that check
+ * names one at a time call check() with their loop index, and only
+ * every CHECK_INTERVAL names is the thread actually looked at.
+ */
+public final class Cancellation
+{
+  /** How many names are checked between looks at the thread (a power of 2). */
+  private static final int CHECK_INTERVAL = 1024;
+
+
+  /**
+   * Default constructor.
+   */
+  private Cancellation()
+  {
+    super();
+  }
+
+
+  /**
+   * Throw an exception if the search has been cancelled.
+   *
+   * @param searcher the thread that started the search
+   * @param index the loop index of the name being checked
+   * @throws CancellationException the search thread was interrupted
+   */
+  public static void check(final Thread searcher, final int index)
+  {
+    if (((index & (CHECK_INTERVAL - 1)) == 0) && searcher.isInterrupted())
+    {
+      throw new CancellationException();
+    }
+  }
+}
@@ -0,0 +1,484 @@
+package io.miti.schema.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Find the names that approximately match each token of a search,
+ * for misspelled or abbreviated names, and rank them by how well
+ * they match.  A token matches a name, from best to worst:
+ *
+ * - as a substring;
+ * - as a subsequence (so "CSTMR" matches "CUSTOMER"), costing more
+ *   for each gap between the matched characters;
+ * - as a substring with a few characters inserted, deleted or
+ *   replaced, costing more for each edit.  Tokens of 4 to 7
+ *   characters allow one edit, and longer tokens two.
+ *
+ * The edit distance is found with Myers' bit-parallel algorithm,
+ * which keeps a column of the dynamic programming table in the bits
+ * of two longs and updates the whole column in a few operations per
+ * character of the name.  Before any of that, each name's character
+ * set (one bit per character class, computed once) is compared with
+ * the token's: a name missing more of the token's characters than
+ * the allowed edits can't match, which rules out most names at the
+ * cost of a few instructions.
+ *
+ * Only the best matches are kept, in a bounded heap, so the ranking
+ * costs O(n log k) for n matching names instead of a full sort.
+ */
+public final class FuzzyMatcher
+{
+  /** The cost of each edit, so any edit ranks below a subsequence. */
+  private static final int EDIT_COST = 8;
+
+  /** The largest cost of the gaps in a subsequence match. */
+  private static final int MAX_GAP_COST = EDIT_COST - 1;
+
+  /** The largest token checked for edits, one bit per character. */
+  private static final int MAX_EDIT_LENGTH = 64;
+
+  /** The names, by ID. */
+  private final List<String> names;
+
+  /** The character set of each name. */
+  private final long[] signatures;
+
+
+  /**
+   * Build the matcher for a list of names.  The list should support
+   * fast random access, and must not change.
+   *
+   * @param nameList the names, by ID
+   */
+  public FuzzyMatcher(final List<String> nameList)
+  {
+    names = nameList;
+    final int count = names.size();
+    signatures = new long[count];
+    for (int id = 0; id < count; ++id)
+    {
+      signatures[id] = getSignature(names.get(id));
+    }
+  }
+
+
+  /**
+   * Return the IDs of the names matching every token, best match
+   * first.  Names with the same score are ordered by length, then
+   * by ID.  With no tokens, every name matches, in ID order.
+   *
+   * @param tokens the upper-cased tokens
+   * @param limit the most names to return
+   * @return the name IDs, best match first
+   * @throws java.util.concurrent.CancellationException the thread
+   *         was interrupted during the search
+   */
+  public int[] search(final List<String> tokens, final int limit)
+  {
+    final int count = names.size();
+    if (tokens.isEmpty())
+    {
+      int[] ids = new int[Math.min(count, limit)];
+      for (int i = 0; i < ids.length; ++i)
+      {
+        ids[i] = i;
+      }
+
+      return ids;
+    }
+
+    // Check the longest tokens first, since they rule out the most names
+    Pattern[] patterns = new Pattern[tokens.size()];
+    for (int t = 0; t < patterns.length; ++t)
+    {
+      patterns[t] = new Pattern(tokens.get(t));
+    }
+    Arrays.sort(patterns);
+
+    // Keep the best matches in a max-heap, ordered by score, then
+    // length, then ID, all packed into one long
+    long[] heap = new long[Math.min(Math.max(limit, 1), 1024)];
+    final Thread searcher = Thread.currentThread();
+    int size = 0;
+    for (int id = 0; id < count; ++id)
+    {
+      Cancellation.check(searcher, id);
+      final String name = names.get(id);
+      final long sig = signatures[id];
+      int score = 0;
+      for (int t = 0; (t < patterns.length) && (score >= 0); ++t)
+      {
+        final int cost = patterns[t].score(name, sig);
+        score = (cost < 0) ? -1 : (score + cost);
+      }
+
+      if (score < 0)
+      {
+        continue;
+      }
+
+      final long entry = (((long) Math.min(score, 0x7FFF)) << 48) |
+                           (((long) Math.min(name.length(), 0xFFFF)) << 32) | id;
+      if (size < limit)
+      {
+        if (size == heap.length)
+        {
+          heap = Arrays.copyOf(heap, Math.min(limit, size * 2));
+        }
+
+        heap[size] = entry;
+        siftUp(heap, size++);
+      }
+      else if (entry < heap[0])
+      {
+        heap[0] = entry;
+        siftDown(heap, size);
+      }
+    }
+
+    Arrays.sort(heap, 0, size);
+    int[] ids = new int[size];
+    for (int i = 0; i < size; ++i)
+    {
+      ids[i] = (int) (heap[i] & 0xFFFFFFFFL);
+    }
+
+    return ids;
+  }
+
+
+  /**
+   * Return the estimated size of the matcher's arrays.
+   *
+   * @return the size, in bytes
+   */
+  public long getBytes()
+  {
+    return (8L * signatures.length);
+  }
+
+
+  /**
+   * Move the entry at an index of the max-heap up to its place.
+   *
+   * @param heap the heap
+   * @param index the index of the entry
+   */
+  private static void siftUp(final long[] heap, final int index)
+  {
+    final long entry = heap[index];
+    int child = index;
+    while (child > 0)
+    {
+      final int parent = (child - 1) >>> 1;
+      if (heap[parent] >= entry)
+      {
+        break;
+      }
+
+      heap[child] = heap[parent];
+      child = parent;
+    }
+
+    heap[child] = entry;
+  }
+
+
+  /**
+   * Move the root of the max-heap down to its place.
+   *
+   * @param heap the heap
+   * @param size the number of entries in the heap
+   */
+  private static void siftDown(final long[] heap, final int size)
+  {
+    final long entry = heap[0];
+    int parent = 0;
+    while (true)
+    {
+      int child = (2 * parent) + 1;
+      if (child >= size)
+      {
+        break;
+      }
+
+      if (((child + 1) < size) && (heap[child + 1] > heap[child]))
+      {
+        ++child;
+      }
+
+      if (heap[child] <= entry)
+      {
+        break;
+      }
+
+      heap[parent] = heap[child];
+      parent = child;
+    }
+
+    heap[parent] = entry;
+  }
+
+
+  /**
+   * Return the character set of a string, one bit per character
+   * class: letters (either case), digits, underscores, and the
+   * other characters sharing the remaining bits.
+   *
+   * @param str the string
+   * @return the character set
+   */
+  private static long getSignature(final String str)
+  {
+    long sig = 0L;
+    for (int i = 0; i < str.length(); ++i)
+    {
+      sig |= (1L << charClass(str.charAt(i)));
+    }
+
+    return sig;
+  }
+
+
+  /**
+   * Return the class of a character in a character set.
+   *
+   * @param ch the character
+   * @return the class, from 0 to 63
+   */
+  private static int charClass(final char ch)
+  {
+    if ((ch >= 'A') && (ch <= 'Z'))
+    {
+      return (ch - 'A');
+    }
+    else if ((ch >= 'a') && (ch <= 'z'))
+    {
+      return (ch - 'a');
+    }
+    else if ((ch >= '0') && (ch <= '9'))
+    {
+      return (ch - '0' + 26);
+    }
+    else if (ch == '_')
+    {
+      return 36;
+    }
+
+    return (37 + (ch % 27));
+  }
+
+
+  /**
+   * One token of a search, prepared for matching.
+   */
+  private static final class Pattern implements Comparable<Pattern>
+  {
+    /** The token. */
+    private final String token;
+
+    /** The character set of the token. */
+    private final long signature;
+
+    /** The most edits allowed for a match. */
+    private final int maxEdits;
+
+    /**
+     * The positions of each ASCII character in the token, one bit
+     * per position, for Myers' algorithm.
+     */
+    private final long[] peq;
+
+    /** The bit of the last position in the token. */
+    private final long lastBit;
+
+    /**
+     * Constructor.
+     *
+     * @param str the upper-cased token
+     */
+    Pattern(final String str)
+    {
+      token = str;
+      signature = getSignature(str);
+      final int len = str.length();
+      if (len > MAX_EDIT_LENGTH)
+      {
+        maxEdits = 0;
+      }
+      else if (len >= 8)
+      {
+        maxEdits = 2;
+      }
+      else if (len >= 4)
+      {
+        maxEdits = 1;
+      }
+      else
+      {
+        maxEdits = 0;
+      }
+
+      peq = new long[128];
+      for (int i = 0; i < Math.min(len, MAX_EDIT_LENGTH); ++i)
+      {
+        final char ch = str.charAt(i);
+        if (ch < 128)
+        {
+          peq[ch] |= (1L << i);
+        }
+      }
+
+      lastBit = (len == 0) ? 0L : (1L << (Math.min(len, MAX_EDIT_LENGTH) - 1));
+    }
+
+    /**
+     * Order patterns by length, longest first.
+     *
+     * @param other the other pattern
+     * @return the result of the comparison
+     */
+    @Override
+    public int compareTo(final Pattern other)
+    {
+      return (other.token.length() - token.length());
+    }
+
+    /**
+     * Return the cost of matching this token in a name.
+     *
+     * @param name the name
+     * @param nameSignature the character set of the name
+     * @return the cost, or -1 if the name doesn't match
+     */
+    int score(final String name, final long nameSignature)
+    {
+      // Each of the token's characters missing from the name
+      // needs at least one edit
+      if (Long.bitCount(signature & ~nameSignature) > maxEdits)
+      {
+        return -1;
+      }
+      else if (name.contains(token))
+      {
+        return 0;
+      }
+
+      final int gaps = countGaps(name);
+      if (gaps > 0)
+      {
+        return Math.min(gaps, MAX_GAP_COST);
+      }
+      else if (maxEdits == 0)
+      {
+        return -1;
+      }
+
+      final int edits = countEdits(name);
+      return ((edits <= maxEdits) ? (EDIT_COST * edits) : -1);
+    }
+
+    /**
+     * Match the token as a subsequence of the name, taking each
+     * character as early as possible, and count the gaps between
+     * the matched characters.
+     *
+     * @param name the name
+     * @return the number of gaps, or -1 if the token isn't a
+     *         subsequence of the name
+     */
+    private int countGaps(final String name)
+    {
+      final int len = token.length();
+      int matched = 0;
+      int gaps = 0;
+      int last = -1;
+      for (int i = 0; (i < name.length()) && (matched < len); ++i)
+      {
+        if (name.charAt(i) == token.charAt(matched))
+        {
+          if ((matched > 0) && (i != (last + 1)))
+          {
+            ++gaps;
+          }
+
+          last = i;
+          ++matched;
+        }
+      }
+
+      return ((matched == len) ? gaps : -1);
+    }
+
+    /**
+     * Return the fewest edits needed to make the token a substring
+     * of the name, using Myers' bit-parallel algorithm.  Bit i of
+     * the vertical deltas (pv and mv) says whether row i + 1 of the
+     * current column is one more or one less than row i; the score
+     * tracks the last row, which is the distance of the best match
+     * ending at the current character.
+     *
+     * @param name the name
+     * @return the fewest edits
+     */
+    private int countEdits(final String name)
+    {
+      long pv = -1L;
+      long mv = 0L;
+      int score = Math.min(token.length(), MAX_EDIT_LENGTH);
+      int best = score;
+      for (int i = 0; i < name.length(); ++i)
+      {
+        final long eq = getPositions(name.charAt(i));
+        final long xv = eq | mv;
+        final long xh = (((eq & pv) + pv) ^ pv) | eq;
+        long ph = mv | ~(xh | pv);
+        long mh = pv & xh;
+        if ((ph & lastBit) != 0L)
+        {
+          ++score;
+        }
+        else if ((mh & lastBit) != 0L)
+        {
+          --score;
+        }
+
+        // A match may start anywhere in the name, so the top row
+        // stays at zero and no carry is shifted in
+        ph <<= 1;
+        mh <<= 1;
+        pv = mh | ~(xv | ph);
+        mv = ph & xv;
+        best = Math.min(best, score);
+      }
+
+      return best;
+    }
+
+    /**
+     * Return the positions of a character in the token.
+     *
+     * @param ch the character
+     * @return one bit per position holding the character
+     */
+    private long getPositions(final char ch)
+    {
+      if (ch < 128)
+      {
+        return peq[ch];
+      }
+
+      long bits = 0L;
+      for (int i = 0; i < Math.min(token.length(), MAX_EDIT_LENGTH); ++i)
+      {
+        if (token.charAt(i) == ch)
+        {
+          bits |= (1L << i);
+        }
+      }
+
+      return bits;
+    }
+  }
+}
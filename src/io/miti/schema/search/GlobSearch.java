@@ -0,0 +1,261 @@
+package io.miti.schema.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Find the names matching glob patterns, such as "USER*" or
+ * "*_ID", in a sorted list of names.  Unlike the other tokens of a
+ * search, a pattern has to match the whole name: '*' matches any
+ * number of characters, and '?' matches any one character.
+ *
+ * The names are sorted, so the ones starting with a pattern's fixed
+ * prefix (the characters before its first wildcard) are next to each
+ * other, and two binary searches find them in O(log n).  Only those
+ * names are checked against the rest of the pattern and the other
+ * tokens; a pattern that is just a prefix and a '*' needs no checks
+ * at all.
+ */
+public final class GlobSearch
+{
+  /** The wildcard for any number of characters. */
+  private static final char ANY = '*';
+
+  /** The wildcard for any one character. */
+  private static final char ONE = '?';
+
+  /** The names, sorted. */
+  private final List<String> names;
+
+
+  /**
+   * Constructor.  The list should support fast random access, must
+   * be sorted, and must not change.
+   *
+   * @param nameList the names, sorted, by ID
+   */
+  public GlobSearch(final List<String> nameList)
+  {
+    names = nameList;
+  }
+
+
+  /**
+   * Return whether a token is a glob pattern.
+   *
+   * @param token the token
+   * @return whether it has a wildcard
+   */
+  public static boolean isPattern(final String token)
+  {
+    return ((token.indexOf(ANY) >= 0) || (token.indexOf(ONE) >= 0));
+  }
+
+
+  /**
+   * Return the IDs of the names matching every token: the patterns
+   * must match the whole name, and the other tokens must be found
+   * in it.
+   *
+   * @param tokens the upper-cased tokens, at least one a pattern
+   * @return the name IDs, in order
+   * @throws java.util.concurrent.CancellationException the thread
+   *         was interrupted during the search
+   */
+  public int[] search(final List<String> tokens)
+  {
+    // Narrow the search to the names starting with the longest
+    // fixed prefix of any pattern
+    String prefix = "";
+    String rangePattern = null;
+    for (int t = 0; t < tokens.size(); ++t)
+    {
+      final String token = tokens.get(t);
+      if (isPattern(token))
+      {
+        final String fixed = getPrefix(token);
+        if ((rangePattern == null) || (fixed.length() > prefix.length()))
+        {
+          prefix = fixed;
+          rangePattern = token;
+        }
+      }
+    }
+
+    final int from = lowerBound(prefix);
+    final int to = upperBound(prefix, from);
+
+    // A lone prefix pattern matches the whole range
+    if ((tokens.size() == 1) && rangePattern.equals(prefix + ANY))
+    {
+      int[] ids = new int[to - from];
+      for (int i = 0; i < ids.length; ++i)
+      {
+        ids[i] = from + i;
+      }
+
+      return ids;
+    }
+
+    int[] ids = new int[to - from];
+    final Thread searcher = Thread.currentThread();
+    int size = 0;
+    for (int id = from; id < to; ++id)
+    {
+      Cancellation.check(searcher, id);
+      if (matchesAll(names.get(id), tokens))
+      {
+        ids[size++] = id;
+      }
+    }
+
+    return ((size == ids.length) ? ids : Arrays.copyOf(ids, size));
+  }
+
+
+  /**
+   * Check whether a name matches every token.
+   *
+   * @param name the name
+   * @param tokens the tokens
+   * @return whether the name matches every token
+   */
+  private static boolean matchesAll(final String name, final List<String> tokens)
+  {
+    for (int t = 0; t < tokens.size(); ++t)
+    {
+      final String token = tokens.get(t);
+      if (isPattern(token) ? !matches(name, token) : !name.contains(token))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Check whether a whole name matches a pattern.  On a mismatch,
+   * the last '*' is made to match one more character, and the rest
+   * of the pattern is tried again from there.
+   *
+   * @param name the name
+   * @param pattern the pattern
+   * @return whether the name matches
+   */
+  private static boolean matches(final String name, final String pattern)
+  {
+    final int nameLen = name.length();
+    final int patLen = pattern.length();
+    int n = 0;
+    int p = 0;
+    int star = -1;
+    int mark = 0;
+    while (n < nameLen)
+    {
+      if ((p < patLen) && ((pattern.charAt(p) == ONE) ||
+                           (pattern.charAt(p) == name.charAt(n))))
+      {
+        ++p;
+        ++n;
+      }
+      else if ((p < patLen) && (pattern.charAt(p) == ANY))
+      {
+        star = p++;
+        mark = n;
+      }
+      else if (star >= 0)
+      {
+        p = star + 1;
+        n = ++mark;
+      }
+      else
+      {
+        return false;
+      }
+    }
+
+    while ((p < patLen) && (pattern.charAt(p) == ANY))
+    {
+      ++p;
+    }
+
+    return (p == patLen);
+  }
+
+
+  /**
+   * Return the characters of a pattern before its first wildcard.
+   *
+   * @param pattern the pattern
+   * @return the fixed prefix
+   */
+  private static String getPrefix(final String pattern)
+  {
+    int end = 0;
+    while ((end < pattern.length()) && (pattern.charAt(end) != ANY) &&
+           (pattern.charAt(end) != ONE))
+    {
+      ++end;
+    }
+
+    return pattern.substring(0, end);
+  }
+
+
+  /**
+   * Find the first name not less than a prefix.
+   *
+   * @param prefix the prefix
+   * @return the index of the first name starting with the prefix,
+   *         if there is one
+   */
+  private int lowerBound(final String prefix)
+  {
+    int low = 0;
+    int high = names.size();
+    while (low < high)
+    {
+      final int mid = (low + high) >>> 1;
+      if (names.get(mid).compareTo(prefix) < 0)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+
+
+  /**
+   * Find the first name after the names starting with a prefix.
+   *
+   * @param prefix the prefix
+   * @param from the first name starting with the prefix
+   * @return the index of the first name after them
+   */
+  private int upperBound(final String prefix, final int from)
+  {
+    int low = from;
+    int high = names.size();
+    while (low < high)
+    {
+      final int mid = (low + high) >>> 1;
+      if (names.get(mid).startsWith(prefix))
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+}
@@ -0,0 +1,69 @@
+package io.miti.schema.search;
+
+import java.util.List;
+
+/**
+ * The kinds of name index, selected with the search.index property
+ * in schema.prop.
+ */
+public enum IndexType
+{
+  /** Check every name; no index. */
+  SCAN
+  {
+    @Override
+    public NameIndex create(final List<String> names)
+    {
+      return new ScanIndex(names);
+    }
+  },
+
+  /** Intersect the posting lists of each trigram in the tokens. */
+  TRIGRAM
+  {
+    @Override
+    public NameIndex create(final List<String> names)
+    {
+      return new TrigramIndex(names);
+    }
+  },
+
+  /** Binary search a suffix array of all the names. */
+  SUFFIX
+  {
+    @Override
+    public NameIndex create(final List<String> names)
+    {
+      return new SuffixArrayIndex(names);
+    }
+  };
+
+
+  /**
+   * Build an index of this kind over a list of names.
+   *
+   * @param names the names, by ID
+   * @return the index
+   */
+  public abstract NameIndex create(final List<String> names);
+
+
+  /**
+   * Return the index type with a name, ignoring case.
+   *
+   * @param name the name of the index type
+   * @return the index type, or null if there is none with the name
+   */
+  public static IndexType find(final String name)
+  {
+    for (IndexType type : values())
+    {
+      if (type.name().equalsIgnoreCase(name))
+      {
+        return type;
+      }
+    }
+
+    return null;
+  }
+}
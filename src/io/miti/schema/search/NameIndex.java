@@ -0,0 +1,30 @@
+package io.miti.schema.search;
+
+import java.util.List;
+
+/**
+ * An index over a list of names (table names or column names) that
+ * finds the names containing every token of a search.  An index is
+ * built once per snapshot and never changed, so it can be searched
+ * by any number of threads.
+ */
+public interface NameIndex
+{
+  /**
+   * Find the names that contain every token.  An empty list of
+   * tokens matches every name.
+   *
+   * @param tokens the search tokens, upper-cased
+   * @return the matching name IDs, in increasing order
+   * @throws java.util.concurrent.CancellationException the thread
+   *         was interrupted during the search
+   */
+  int[] search(final List<String> tokens);
+
+  /**
+   * Estimate the heap size of the index, not counting the names.
+   *
+   * @return the estimated size, in bytes
+   */
+  long getBytes();
+}
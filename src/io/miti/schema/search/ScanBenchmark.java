@@ -0,0 +1,244 @@
+package io.miti.schema.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the scan index on one thread and on fork-join pools of
+ * different sizes, over lists of generated names from 1K names up,
+ * doubling each time, and reports the smallest list at which each
+ * pool size beats one thread from then on.  That crossover is what
+ * ScanIndex.MIN_PARALLEL_SIZE should be set from, so this needs to
+ * be run on a machine with more than one processor:
+ *
+ * <pre>
+ *   ant bench
+ *   java -cp classes io.miti.schema.search.ScanBenchmark [max names] [max threads]
+ * </pre>
+ *
+ * The max threads default to the number of processors.  Each time
+ * is the median of at least 9 searches, and of enough searches to
+ * take 100 ms.
+ */
+public final class ScanBenchmark
+{
+  /** The smallest list timed. */
+  private static final int MIN_SIZE = 1024;
+
+  /** The default largest list timed. */
+  private static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+  /** The fewest searches timed for each result. */
+  private static final int MIN_RUNS = 9;
+
+  /** The least total time spent on each result, in nanoseconds. */
+  private static final long MIN_TOTAL_NANOS = 100L * 1000L * 1000L;
+
+  /** The words the generated names are made of. */
+  private static final String[] WORDS = {"ORDER", "LINE", "ITEM", "CUSTOMER",
+    "ACCOUNT", "ADDRESS", "CODE", "DATE", "STATUS", "TYPE", "AMOUNT", "NAME",
+    "DESC", "USER", "ROLE", "AUDIT", "HIST", "REF", "FLAG", "QTY"};
+
+  /** The search tokens. */
+  private static final List<String> TOKENS = Collections.singletonList("ID");
+
+  /** Keeps the search results live, so they aren't optimized away. */
+  private static long checksum = 0L;
+
+
+  /**
+   * Default constructor.
+   */
+  private ScanBenchmark()
+  {
+    super();
+  }
+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args the largest list and the most threads (both optional)
+   */
+  public static void main(final String[] args)
+  {
+    final int maxSize = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_MAX_SIZE;
+    final int processors = Runtime.getRuntime().availableProcessors();
+    final int maxThreads = (args.length > 1) ? Integer.parseInt(args[1]) :
+                             Math.max(2, processors);
+    final int[] threads = getThreadCounts(maxThreads);
+
+    final List<String> all = generateNames(maxSize);
+    System.out.println("Processors: " + processors + ", names: " + maxSize +
+                       ", MIN_PARALLEL_SIZE: " + ScanIndex.MIN_PARALLEL_SIZE);
+    if (processors < 2)
+    {
+      System.out.println("Only one processor: the pools can't beat one thread here");
+    }
+
+    ForkJoinPool[] pools = new ForkJoinPool[threads.length];
+    for (int t = 0; t < threads.length; ++t)
+    {
+      pools[t] = new ForkJoinPool(threads[t]);
+    }
+
+    // Warm up both paths over the whole list
+    time(new ScanIndex(all, null));
+    time(new ScanIndex(all, pools[pools.length - 1]));
+
+    // Time each list size, in microseconds
+    StringBuilder header = new StringBuilder(80);
+    header.append(String.format("%10s %10s", "names", "1 thread"));
+    for (int count : threads)
+    {
+      header.append(String.format(" %10s", count + " threads"));
+    }
+    System.out.println(header);
+
+    List<Integer> sizes = new ArrayList<Integer>(16);
+    List<double[]> results = new ArrayList<double[]>(16);
+    for (int size = MIN_SIZE; size <= maxSize; size *= 2)
+    {
+      final List<String> names = all.subList(0, size);
+      double[] micros = new double[threads.length + 1];
+      micros[0] = time(new ScanIndex(names, null));
+      StringBuilder line = new StringBuilder(80);
+      line.append(String.format("%10d %10.1f", size, micros[0]));
+      for (int t = 0; t < threads.length; ++t)
+      {
+        micros[t + 1] = time(new ScanIndex(names, pools[t]));
+        line.append(String.format(" %10.1f", micros[t + 1]));
+      }
+      System.out.println(line);
+
+      sizes.add(Integer.valueOf(size));
+      results.add(micros);
+    }
+
+    // Report the crossover for each pool size
+    for (int t = 0; t < threads.length; ++t)
+    {
+      final int crossover = getCrossover(sizes, results, t + 1);
+      System.out.println("Crossover with " + threads[t] + " threads: " +
+                         ((crossover < 0) ? "none up to " + maxSize + " names" :
+                                            crossover + " names"));
+    }
+
+    for (ForkJoinPool pool : pools)
+    {
+      pool.shutdown();
+    }
+    System.out.println("(checksum " + checksum + ")");
+  }
+
+
+  /**
+   * Return the pool sizes to time: the powers of 2 from 2 up to the
+   * most threads, and the most threads.
+   *
+   * @param maxThreads the most threads
+   * @return the pool sizes
+   */
+  private static int[] getThreadCounts(final int maxThreads)
+  {
+    List<Integer> counts = new ArrayList<Integer>(8);
+    for (int count = 2; count < maxThreads; count *= 2)
+    {
+      counts.add(Integer.valueOf(count));
+    }
+    counts.add(Integer.valueOf(maxThreads));
+
+    int[] array = new int[counts.size()];
+    for (int i = 0; i < array.length; ++i)
+    {
+      array[i] = counts.get(i).intValue();
+    }
+
+    return array;
+  }
+
+
+  /**
+   * Generate upper-case names of 2 to 5 words, some ending in ID,
+   * sorted, as in a schema snapshot.
+   *
+   * @param count the number of names
+   * @return the names
+   */
+  private static List<String> generateNames(final int count)
+  {
+    Random random = new Random(42L);
+    String[] names = new String[count];
+    StringBuilder sb = new StringBuilder(40);
+    for (int i = 0; i < count; ++i)
+    {
+      sb.setLength(0);
+      final int words = 2 + random.nextInt(4);
+      for (int w = 0; w < words; ++w)
+      {
+        sb.append(WORDS[random.nextInt(WORDS.length)]).append('_');
+      }
+      sb.append((random.nextInt(10) == 0) ? "ID" : Integer.toString(i));
+      names[i] = sb.toString();
+    }
+
+    Arrays.sort(names);
+    return Arrays.asList(names);
+  }
+
+
+  /**
+   * Time searches of an index.
+   *
+   * @param index the index
+   * @return the median time of a search, in microseconds
+   */
+  private static double time(final ScanIndex index)
+  {
+    List<Long> times = new ArrayList<Long>(64);
+    long total = 0L;
+    while ((times.size() < MIN_RUNS) || (total < MIN_TOTAL_NANOS))
+    {
+      final long start = System.nanoTime();
+      checksum += index.search(TOKENS).length;
+      final long elapsed = System.nanoTime() - start;
+      times.add(Long.valueOf(elapsed));
+      total += elapsed;
+    }
+
+    Collections.sort(times);
+    return (times.get(times.size() / 2).longValue() / 1000.0);
+  }
+
+
+  /**
+   * Return the smallest list at which a pool beats one thread, for
+   * that list and every larger one.
+   *
+   * @param sizes the list sizes, in increasing order
+   * @param results the times for each list size
+   * @param column the column of the pool's times
+   * @return the list size, or -1 if the pool never beats one thread
+   */
+  private static int getCrossover(final List<Integer> sizes,
+                                  final List<double[]> results,
+                                  final int column)
+  {
+    int crossover = -1;
+    for (int i = sizes.size() - 1; i >= 0; --i)
+    {
+      final double[] micros = results.get(i);
+      if (micros[column] >= micros[0])
+      {
+        break;
+      }
+      crossover = sizes.get(i).intValue();
+    }
+
+    return crossover;
+  }
+}
@@ -0,0 +1,229 @@
+package io.miti.schema.search;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A name "index" that checks every name with String.contains().  It
+ * takes no memory beyond the names, and is the baseline the other
+ * indexes are measured against.
+ *
+ * Long lists are split into ranges of names that are checked in
+ * parallel on a fork-join pool, and the matches of each range are
+ * joined in order, so the result is the same as a sequential scan.
+ */
+public final class ScanIndex implements NameIndex
+{
+  /**
+   * The smallest range of names checked as one task.  A name takes
+   * about 8 ns to check, so a range takes about 70 us, against about
+   * 2.5 us to fork and join each task.
+   */
+  private static final int MIN_TASK_SIZE = 8 * 1024;
+
+  /**
+   * Lists with fewer names than this are checked on one thread: the
+   * smallest list that gives each of two processors a whole task.
+   * At this size, a second processor saves about 65 us, against
+   * about 6 us to hand the scan to the pool and 5 us for the tasks.
+   * Those costs were measured on one processor; ScanBenchmark (run
+   * with 'ant bench') measures the crossover with more threads.
+   */
+  static final int MIN_PARALLEL_SIZE = 2 * MIN_TASK_SIZE;
+
+  /** The pool shared by every parallel scan, created when first used. */
+  private static ForkJoinPool sharedPool = null;
+
+  /** The names, by ID. */
+  private final List<String> names;
+
+  /** The pool used to check the names, or null to check them on one thread. */
+  private final ForkJoinPool pool;
+
+
+  /**
+   * Constructor.  The list should support fast random access, and
+   * must not change.
+   *
+   * @param nameList the names, by ID
+   */
+  public ScanIndex(final List<String> nameList)
+  {
+    names = nameList;
+    pool = ((Runtime.getRuntime().availableProcessors() > 1) &&
+            (names.size() >= MIN_PARALLEL_SIZE)) ? getSharedPool() : null;
+  }
+
+
+  /**
+   * Constructor taking the pool, so ScanBenchmark can time the
+   * same list on one thread and on pools of different sizes.
+   *
+   * @param nameList the names, by ID
+   * @param forkJoinPool the pool, or null to check the names on one thread
+   */
+  ScanIndex(final List<String> nameList, final ForkJoinPool forkJoinPool)
+  {
+    names = nameList;
+    pool = forkJoinPool;
+  }
+
+
+  /**
+   * Return the pool shared by every parallel scan, with one thread
+   * per processor.
+   *
+   * @return the pool
+   */
+  private static synchronized ForkJoinPool getSharedPool()
+  {
+    if (sharedPool == null)
+    {
+      sharedPool = new ForkJoinPool();
+    }
+
+    return sharedPool;
+  }
+
+
+  @Override
+  public int[] search(final List<String> tokens)
+  {
+    final int count = names.size();
+    final Thread searcher = Thread.currentThread();
+    if (pool == null)
+    {
+      return scan(0, count, tokens, searcher);
+    }
+
+    return pool.invoke(new ScanTask(0, count, tokens, searcher));
+  }
+
+
+  /**
+   * Check a range of names for the tokens.
+   *
+   * @param from the first name ID in the range
+   * @param to one past the last name ID in the range
+   * @param tokens the tokens
+   * @param searcher the thread that started the search
+   * @return the IDs of the names containing every token, in order
+   */
+  private int[] scan(final int from, final int to, final List<String> tokens,
+                     final Thread searcher)
+  {
+    final int count = to - from;
+    int[] ids = new int[Math.min(count, 64)];
+    int size = 0;
+    for (int id = from; id < to; ++id)
+    {
+      Cancellation.check(searcher, id);
+      if (containsAll(names.get(id), tokens))
+      {
+        if (size == ids.length)
+        {
+          ids = Arrays.copyOf(ids, Math.min(count, size * 2));
+        }
+
+        ids[size++] = id;
+      }
+    }
+
+    return ((size == ids.length) ? ids : Arrays.copyOf(ids, size));
+  }
+
+
+  /**
+   * Check a range of names, splitting the range in half until it's
+   * small enough to check on one thread.
+   */
+  private final class ScanTask extends RecursiveTask<int[]>
+  {
+    /** Default serial version ID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The first name ID in the range. */
+    private final int from;
+
+    /** One past the last name ID in the range. */
+    private final int to;
+
+    /** The tokens. */
+    private final List<String> tokens;
+
+    /** The thread that started the search, which may cancel it. */
+    private final Thread searcher;
+
+    /**
+     * Constructor.
+     *
+     * @param fromId the first name ID in the range
+     * @param toId one past the last name ID in the range
+     * @param tokenList the tokens
+     * @param searchThread the thread that started the search
+     */
+    ScanTask(final int fromId, final int toId, final List<String> tokenList,
+             final Thread searchThread)
+    {
+      from = fromId;
+      to = toId;
+      tokens = tokenList;
+      searcher = searchThread;
+    }
+
+    @Override
+    protected int[] compute()
+    {
+      if ((to - from) <= MIN_TASK_SIZE)
+      {
+        return scan(from, to, tokens, searcher);
+      }
+
+      final int mid = (from + to) >>> 1;
+      ScanTask left = new ScanTask(from, mid, tokens, searcher);
+      left.fork();
+      final int[] right = new ScanTask(mid, to, tokens, searcher).compute();
+      final int[] result = left.join();
+
+      // Keep the IDs in order
+      if (right.length == 0)
+      {
+        return result;
+      }
+
+      final int[] ids = Arrays.copyOf(result, result.length + right.length);
+      System.arraycopy(right, 0, ids, result.length, right.length);
+      return ids;
+    }
+  }
+
+
+  /**
+   * Check whether a name contains every token.
+   *
+   * @param name the name
+   * @param tokens the tokens
+   * @return whether the name contains every token
+   */
+  static boolean containsAll(final String name, final List<String> tokens)
+  {
+    for (int i = 0; i < tokens.size(); ++i)
+    {
+      if (!name.contains(tokens.get(i)))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  @Override
+  public long getBytes()
+  {
+    return 0L;
+  }
+}
@@ -0,0 +1,433 @@
+package io.miti.schema.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A suffix array over all the names, upper-cased and joined into one
+ * text with a zero character after each name.  Every occurrence of
+ * a token is the start of a suffix beginning with the token, and
+ * those suffixes are next to each other in the sorted array, so one
+ * binary search (O(m log n) for a token of length m) finds the first
+ * of them.  The LCP array, holding the length of the prefix each
+ * suffix shares with the one before it, then gives the rest without
+ * comparing any more characters.  There are no false positives, so
+ * a one-token search checks no names; with several tokens, only the
+ * names with the rarest token are checked for the others.
+ *
+ * The array is built by prefix doubling with radix sorts
+ * (O(n log n)), and the LCP array with Kasai's algorithm (O(n)).
+ */
+public final class SuffixArrayIndex implements NameIndex
+{
+  /** The character after each name. */
+  private static final char SEPARATOR = '\0';
+
+  /** The number of names. */
+  private final int count;
+
+  /** The upper-cased names, each followed by a separator. */
+  private final char[] text;
+
+  /** The offset of each name in the text. */
+  private final int[] nameStart;
+
+  /** The start of each suffix of the text, in sorted order. */
+  private final int[] suffixes;
+
+  /** The length of the prefix shared by each suffix and the one before it. */
+  private final int[] lcp;
+
+
+  /**
+   * Build the index over a list of names.
+   *
+   * @param names the names, by ID
+   */
+  public SuffixArrayIndex(final List<String> names)
+  {
+    count = names.size();
+    nameStart = new int[count + 1];
+    int len = 0;
+    for (int id = 0; id < count; ++id)
+    {
+      nameStart[id] = len;
+      len += names.get(id).length() + 1;
+    }
+    nameStart[count] = len;
+
+    text = new char[len];
+    for (int id = 0; id < count; ++id)
+    {
+      final String name = names.get(id).toUpperCase();
+      name.getChars(0, name.length(), text, nameStart[id]);
+      text[nameStart[id] + name.length()] = SEPARATOR;
+    }
+
+    suffixes = buildSuffixArray(text);
+    lcp = buildLcp(text, suffixes);
+  }
+
+
+  /**
+   * Build the suffix array by prefix doubling.  After each round,
+   * the suffixes are sorted by their first k characters, and rank
+   * holds each suffix's position among the distinct prefixes; the
+   * next round sorts by the pair of ranks of i and i + k, giving
+   * the order by the first 2k characters.
+   *
+   * @param text the text
+   * @return the suffix array
+   */
+  private static int[] buildSuffixArray(final char[] text)
+  {
+    final int n = text.length;
+    int[] sa = new int[n];
+    if (n == 0)
+    {
+      return sa;
+    }
+
+    // Sort by the first character
+    int[] rank = new int[n];
+    int[] counts = new int[Math.max(n, Character.MAX_VALUE + 1) + 1];
+    for (int i = 0; i < n; ++i)
+    {
+      ++counts[text[i] + 1];
+    }
+    for (int c = 1; c <= Character.MAX_VALUE + 1; ++c)
+    {
+      counts[c] += counts[c - 1];
+    }
+    for (int i = 0; i < n; ++i)
+    {
+      sa[counts[text[i]]++] = i;
+    }
+
+    int classes = 1;
+    rank[sa[0]] = 0;
+    for (int i = 1; i < n; ++i)
+    {
+      if (text[sa[i]] != text[sa[i - 1]])
+      {
+        ++classes;
+      }
+      rank[sa[i]] = classes - 1;
+    }
+
+    int[] sa2 = new int[n];
+    int[] rank2 = new int[n];
+    for (int k = 1; (classes < n) && (k < n); k <<= 1)
+    {
+      // Order by the second rank: suffixes with no second half
+      // first, then the others in the order of their second half
+      int p = 0;
+      for (int i = n - k; i < n; ++i)
+      {
+        sa2[p++] = i;
+      }
+      for (int i = 0; i < n; ++i)
+      {
+        if (sa[i] >= k)
+        {
+          sa2[p++] = sa[i] - k;
+        }
+      }
+
+      // Stable counting sort by the first rank
+      Arrays.fill(counts, 0, classes + 1, 0);
+      for (int i = 0; i < n; ++i)
+      {
+        ++counts[rank[i] + 1];
+      }
+      for (int c = 1; c <= classes; ++c)
+      {
+        counts[c] += counts[c - 1];
+      }
+      for (int i = 0; i < n; ++i)
+      {
+        final int s = sa2[i];
+        sa[counts[rank[s]]++] = s;
+      }
+
+      // Assign the new ranks
+      classes = 1;
+      rank2[sa[0]] = 0;
+      for (int i = 1; i < n; ++i)
+      {
+        final int cur = sa[i];
+        final int prev = sa[i - 1];
+        final int curSecond = (cur + k < n) ? rank[cur + k] : -1;
+        final int prevSecond = (prev + k < n) ? rank[prev + k] : -1;
+        if ((rank[cur] != rank[prev]) || (curSecond != prevSecond))
+        {
+          ++classes;
+        }
+        rank2[cur] = classes - 1;
+      }
+
+      int[] swap = rank;
+      rank = rank2;
+      rank2 = swap;
+    }
+
+    return sa;
+  }
+
+
+  /**
+   * Build the LCP array with Kasai's algorithm.  The suffixes are
+   * visited in text order; each one shares at least one less
+   * character with its predecessor than the previous suffix did.
+   *
+   * @param text the text
+   * @param sa the suffix array
+   * @return the LCP array
+   */
+  private static int[] buildLcp(final char[] text, final int[] sa)
+  {
+    final int n = sa.length;
+    int[] rank = new int[n];
+    for (int i = 0; i < n; ++i)
+    {
+      rank[sa[i]] = i;
+    }
+
+    int[] result = new int[n];
+    int h = 0;
+    for (int i = 0; i < n; ++i)
+    {
+      if (rank[i] > 0)
+      {
+        final int j = sa[rank[i] - 1];
+        while (((i + h) < n) && ((j + h) < n) && (text[i + h] == text[j + h]))
+        {
+          ++h;
+        }
+
+        result[rank[i]] = h;
+        if (h > 0)
+        {
+          --h;
+        }
+      }
+      else
+      {
+        h = 0;
+      }
+    }
+
+    return result;
+  }
+
+
+  @Override
+  public int[] search(final List<String> tokens)
+  {
+    if (tokens.isEmpty())
+    {
+      int[] ids = new int[count];
+      for (int i = 0; i < count; ++i)
+      {
+        ids[i] = i;
+      }
+
+      return ids;
+    }
+
+    // Find the first suffix starting with each token
+    final int tokenCount = tokens.size();
+    String[] upper = new String[tokenCount];
+    int[] first = new int[tokenCount];
+    int[] last = new int[tokenCount];
+    for (int t = 0; t < tokenCount; ++t)
+    {
+      upper[t] = tokens.get(t).toUpperCase();
+      first[t] = lowerBound(upper[t]);
+      if ((first[t] >= suffixes.length) || (compare(upper[t], suffixes[first[t]]) != 0))
+      {
+        return new int[0];
+      }
+
+      last[t] = first[t] + 1;
+    }
+
+    // The following suffixes start with the token for as long as
+    // they share at least its length with their predecessor.  Step
+    // through every token's range together, and stop at the end of
+    // the shortest one.
+    int best = -1;
+    while (best < 0)
+    {
+      for (int t = 0; t < tokenCount; ++t)
+      {
+        if ((last[t] < suffixes.length) && (lcp[last[t]] >= upper[t].length()))
+        {
+          ++last[t];
+        }
+        else
+        {
+          best = t;
+          break;
+        }
+      }
+    }
+
+    // Map each occurrence to its name (a name with the token more
+    // than once appears more than once), and check the other tokens
+    int[] ids = new int[last[best] - first[best]];
+    for (int i = first[best]; i < last[best]; ++i)
+    {
+      ids[i - first[best]] = getNameId(suffixes[i]);
+    }
+
+    Arrays.sort(ids);
+    final Thread searcher = Thread.currentThread();
+    int size = 0;
+    int prev = -1;
+    for (int i = 0; i < ids.length; ++i)
+    {
+      Cancellation.check(searcher, i);
+      final int id = ids[i];
+      if ((id != prev) && containsOthers(id, upper, best))
+      {
+        ids[size++] = id;
+      }
+      prev = id;
+    }
+
+    return ((size == ids.length) ? ids : Arrays.copyOf(ids, size));
+  }
+
+
+  /**
+   * Check whether a name contains every token but one, which it's
+   * already known to contain.
+   *
+   * @param id the name ID
+   * @param tokens the upper-cased tokens
+   * @param skip the index of the token to skip
+   * @return whether the name contains the other tokens
+   */
+  private boolean containsOthers(final int id, final String[] tokens,
+                                 final int skip)
+  {
+    final int from = nameStart[id];
+    final int to = nameStart[id + 1] - 1;
+    for (int t = 0; t < tokens.length; ++t)
+    {
+      if ((t != skip) && !contains(from, to, tokens[t]))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Check whether a range of the text contains a token.
+   *
+   * @param from the start of the range
+   * @param to the end of the range (exclusive)
+   * @param token the token
+   * @return whether the range contains the token
+   */
+  private boolean contains(final int from, final int to, final String token)
+  {
+    final int len = token.length();
+    for (int i = from; i <= (to - len); ++i)
+    {
+      int j = 0;
+      while ((j < len) && (text[i + j] == token.charAt(j)))
+      {
+        ++j;
+      }
+
+      if (j == len)
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Find the first suffix not less than the token.
+   *
+   * @param token the token
+   * @return the index of the suffix in the suffix array
+   */
+  private int lowerBound(final String token)
+  {
+    int low = 0;
+    int high = suffixes.length;
+    while (low < high)
+    {
+      final int mid = (low + high) >>> 1;
+      if (compare(token, suffixes[mid]) > 0)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+
+
+  /**
+   * Compare a token with the start of a suffix.
+   *
+   * @param token the token
+   * @param start the start of the suffix in the text
+   * @return 0 if the suffix starts with the token, or the sign of
+   *         the first difference between the token and the suffix
+   */
+  private int compare(final String token, final int start)
+  {
+    final int len = token.length();
+    for (int i = 0; i < len; ++i)
+    {
+      if ((start + i) >= text.length)
+      {
+        return 1;
+      }
+
+      final int diff = token.charAt(i) - text[start + i];
+      if (diff != 0)
+      {
+        return diff;
+      }
+    }
+
+    return 0;
+  }
+
+
+  /**
+   * Return the ID of the name holding a position in the text.
+   *
+   * @param pos the position
+   * @return the name ID
+   */
+  private int getNameId(final int pos)
+  {
+    final int index = Arrays.binarySearch(nameStart, pos);
+    return ((index >= 0) ? index : (-index - 2));
+  }
+
+
+  @Override
+  public long getBytes()
+  {
+    return ((2L * text.length) +
+            (4L * (nameStart.length + suffixes.length + lcp.length)));
+  }
+}
@@ -0,0 +1,371 @@
+package io.miti.schema.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index from the words that names are built from to the
+ * names using them, for searching by whole words.  Names are split
+ * into words at underscores and between letters and digits, so
+ * "ORDER_LINE_ID2" is made of ORDER, LINE, ID and 2.  A search for
+ * whole words looks up each word's posting list and intersects them,
+ * touching only the names that use the rarest word, rather than
+ * checking every name for substrings.
+ *
+ * The distinct words are kept in a sorted array, so a word's position
+ * is its ID, and the posting lists are stored in one array: the
+ * names using word w are in postings[start[w]] up to
+ * postings[start[w + 1]], in increasing name ID order.
+ */
+public final class TokenIndex implements NameIndex
+{
+  /** The names, by ID. */
+  private final List<String> names;
+
+  /** The distinct words, sorted. */
+  private final String[] words;
+
+  /** The start of each word's postings; the last entry is the total. */
+  private final int[] start;
+
+  /** The name IDs for each word. */
+  private final int[] postings;
+
+
+  /**
+   * Build the index over a list of names.  The list should support
+   * fast random access, and must not change.
+   *
+   * @param nameList the names, by ID
+   * @throws java.util.concurrent.CancellationException the thread
+   *         was interrupted during the build
+   */
+  public TokenIndex(final List<String> nameList)
+  {
+    names = nameList;
+    final int count = names.size();
+    final Thread builder = Thread.currentThread();
+
+    // Split each name once, giving each word an ID in the order it's
+    // first seen, and keep the distinct word IDs of each name so the
+    // postings can be filled without splitting the names again;
+    // lastName stops a word from being counted twice for the same name
+    Map<String, Integer> ids = new HashMap<String, Integer>(1024);
+    List<String> parts = new ArrayList<String>(8);
+    int[] counts = new int[1024];
+    int[] lastName = new int[1024];
+    int[] nameStart = new int[count + 1];
+    int[] nameWords = new int[Math.max(16, count * 2)];
+    int used = 0;
+    for (int id = 0; id < count; ++id)
+    {
+      Cancellation.check(builder, id);
+      split(names.get(id), parts);
+      for (int p = 0; p < parts.size(); ++p)
+      {
+        Integer word = ids.get(parts.get(p));
+        if (word == null)
+        {
+          word = Integer.valueOf(ids.size());
+          ids.put(parts.get(p), word);
+          if (word.intValue() == counts.length)
+          {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+            lastName = Arrays.copyOf(lastName, lastName.length * 2);
+          }
+          lastName[word.intValue()] = -1;
+        }
+
+        if (lastName[word.intValue()] != id)
+        {
+          lastName[word.intValue()] = id;
+          ++counts[word.intValue()];
+          if (used == nameWords.length)
+          {
+            nameWords = Arrays.copyOf(nameWords, used + (used >> 1));
+          }
+          nameWords[used++] = word.intValue();
+        }
+      }
+      nameStart[id + 1] = used;
+    }
+
+    // Sort the words, and map each first-seen ID to its sorted ID
+    words = ids.keySet().toArray(new String[ids.size()]);
+    Arrays.sort(words);
+    int[] sortedId = new int[words.length];
+    start = new int[words.length + 1];
+    for (int w = 0; w < words.length; ++w)
+    {
+      final int seen = ids.get(words[w]).intValue();
+      sortedId[seen] = w;
+      start[w + 1] = start[w] + counts[seen];
+    }
+
+    // Fill in the postings, in name order
+    postings = new int[start[words.length]];
+    int[] next = Arrays.copyOf(start, words.length);
+    for (int id = 0; id < count; ++id)
+    {
+      Cancellation.check(builder, id);
+      for (int i = nameStart[id]; i < nameStart[id + 1]; ++i)
+      {
+        postings[next[sortedId[nameWords[i]]]++] = id;
+      }
+    }
+  }
+
+
+  /**
+   * Split a name into its words: the runs of letters and the runs
+   * of digits, with underscores and other characters between them.
+   *
+   * @param name the name
+   * @param parts the list to fill with the words
+   */
+  private static void split(final String name, final List<String> parts)
+  {
+    parts.clear();
+    final int len = name.length();
+    int from = -1;
+    int kind = 0;
+    for (int i = 0; i <= len; ++i)
+    {
+      final int cur = (i == len) ? 0 : charKind(name.charAt(i));
+      if (cur != kind)
+      {
+        if (kind != 0)
+        {
+          parts.add(name.substring(from, i));
+        }
+
+        from = i;
+        kind = cur;
+      }
+    }
+  }
+
+
+  /**
+   * Return the kind of a character, for splitting names into words.
+   *
+   * @param ch the character
+   * @return 1 for a letter, 2 for a digit, or 0 for a separator
+   */
+  private static int charKind(final char ch)
+  {
+    if (Character.isDigit(ch))
+    {
+      return 2;
+    }
+
+    return (Character.isLetter(ch) ? 1 : 0);
+  }
+
+
+  /**
+   * Return the IDs of the names using every token as a whole word.
+   * A token made of several words, such as ORDER_ID, matches the
+   * names containing the token as whole words, so ORDER_ID matches
+   * ORDER_ID_2 but not ORDER_IDENT.
+   *
+   * @param tokens the upper-cased tokens
+   * @return the name IDs, in order
+   */
+  @Override
+  public int[] search(final List<String> tokens)
+  {
+    if (tokens.isEmpty())
+    {
+      int[] ids = new int[names.size()];
+      for (int i = 0; i < ids.length; ++i)
+      {
+        ids[i] = i;
+      }
+
+      return ids;
+    }
+
+    // Look up the words, and order them by posting length, so the
+    // intersection starts with the rarest
+    List<String> parts = new ArrayList<String>(8);
+    long[] packed = new long[8];
+    int size = 0;
+    boolean multiPart = false;
+    for (int t = 0; t < tokens.size(); ++t)
+    {
+      split(tokens.get(t), parts);
+      if (parts.isEmpty())
+      {
+        return new int[0];
+      }
+
+      multiPart = multiPart || (parts.size() > 1) ||
+                    !parts.get(0).equals(tokens.get(t));
+      for (int p = 0; p < parts.size(); ++p)
+      {
+        final int word = Arrays.binarySearch(words, parts.get(p));
+        if (word < 0)
+        {
+          return new int[0];
+        }
+
+        if (size == packed.length)
+        {
+          packed = Arrays.copyOf(packed, size * 2);
+        }
+
+        packed[size++] = (((long) (start[word + 1] - start[word])) << 32) | word;
+      }
+    }
+
+    Arrays.sort(packed, 0, size);
+    int word = (int) packed[0];
+    int[] candidates = Arrays.copyOfRange(postings, start[word], start[word + 1]);
+    int count = candidates.length;
+    for (int i = 1; (i < size) && (count > 0); ++i)
+    {
+      word = (int) packed[i];
+      count = intersect(candidates, count, start[word], start[word + 1]);
+    }
+
+    // A token of several words must also appear as written,
+    // starting and ending on word boundaries
+    if (multiPart)
+    {
+      final Thread searcher = Thread.currentThread();
+      int kept = 0;
+      for (int i = 0; i < count; ++i)
+      {
+        Cancellation.check(searcher, i);
+        if (containsAllWords(names.get(candidates[i]), tokens))
+        {
+          candidates[kept++] = candidates[i];
+        }
+      }
+      count = kept;
+    }
+
+    return ((count == candidates.length) ? candidates :
+              Arrays.copyOf(candidates, count));
+  }
+
+
+  /**
+   * Check whether a name contains every token as whole words.
+   *
+   * @param name the name
+   * @param tokens the tokens
+   * @return whether the name contains every token
+   */
+  private static boolean containsAllWords(final String name,
+                                          final List<String> tokens)
+  {
+    for (int t = 0; t < tokens.size(); ++t)
+    {
+      if (!containsWords(name, tokens.get(t)))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Check whether a name contains a token that starts and ends on
+   * word boundaries.
+   *
+   * @param name the name
+   * @param token the token
+   * @return whether the name contains the token as whole words
+   */
+  private static boolean containsWords(final String name, final String token)
+  {
+    final int len = token.length();
+    int from = name.indexOf(token);
+    while (from >= 0)
+    {
+      if (isBoundary(name, from) && isBoundary(name, from + len))
+      {
+        return true;
+      }
+
+      from = name.indexOf(token, from + 1);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Check whether a position in a name is between two words: at
+   * either end, next to a separator, or between a letter and a digit.
+   *
+   * @param name the name
+   * @param index the position, from 0 to the length of the name
+   * @return whether the position is a word boundary
+   */
+  private static boolean isBoundary(final String name, final int index)
+  {
+    if ((index == 0) || (index == name.length()))
+    {
+      return true;
+    }
+
+    final int before = charKind(name.charAt(index - 1));
+    return ((before == 0) || (before != charKind(name.charAt(index))));
+  }
+
+
+  /**
+   * Keep only the candidates found in a range of the postings.  Both
+   * are in increasing order, and the candidates are no more than
+   * the postings, so each candidate is found by a binary search
+   * starting where the previous one was found.
+   *
+   * @param candidates the candidate name IDs
+   * @param size the number of candidates
+   * @param from the start of the postings range
+   * @param to the end of the postings range
+   * @return the number of candidates kept
+   */
+  private int intersect(final int[] candidates, final int size,
+                        final int from, final int to)
+  {
+    int kept = 0;
+    int low = from;
+    for (int i = 0; (i < size) && (low < to); ++i)
+    {
+      final int index = Arrays.binarySearch(postings, low, to, candidates[i]);
+      if (index >= 0)
+      {
+        candidates[kept++] = candidates[i];
+        low = index + 1;
+      }
+      else
+      {
+        low = -index - 1;
+      }
+    }
+
+    return kept;
+  }
+
+
+  @Override
+  public long getBytes()
+  {
+    long bytes = 4L * (start.length + postings.length);
+    for (String word : words)
+    {
+      bytes += 40L + (2L * word.length());
+    }
+
+    return bytes;
+  }
+}
@@ -0,0 +1,312 @@
+package io.miti.schema.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An inverted index from each trigram (three consecutive characters)
+ * to the names containing it, used to find the names that contain
+ * every token of a search.  A name can only contain a token if it
+ * contains all of the token's trigrams, so intersecting the posting
+ * lists of the trigrams gives a small set of candidates, and only
+ * those are checked with String.contains().
+ *
+ * The posting lists are stored in one array (compressed sparse row
+ * format): the postings of trigram t are in postings[start[t]] up to
+ * postings[start[t + 1]], in increasing name ID order.
+ */
+public final class TrigramIndex implements NameIndex
+{
+  /** The number of bits used for each character of a trigram. */
+  private static final int CHAR_BITS = 6;
+
+  /** The number of distinct trigram keys. */
+  private static final int KEY_COUNT = 1 << (3 * CHAR_BITS);
+
+  /** The mask for the two most recent characters of a trigram. */
+  private static final int KEY_MASK = (1 << (2 * CHAR_BITS)) - 1;
+
+  /** The names, by ID. */
+  private final List<String> names;
+
+  /** Checks every name, for tokens too short to have a trigram. */
+  private final ScanIndex scanner;
+
+  /** The start of each trigram's postings; the last entry is the total. */
+  private final int[] start;
+
+  /** The name IDs for each trigram. */
+  private final int[] postings;
+
+
+  /**
+   * Build the index over a list of names.  The list should support
+   * fast random access, and must not change.
+   *
+   * @param nameList the names, by ID
+   */
+  public TrigramIndex(final List<String> nameList)
+  {
+    names = nameList;
+    scanner = new ScanIndex(names);
+    final int count = names.size();
+
+    // Count the names containing each trigram; lastName stops a
+    // trigram from being counted twice for the same name
+    start = new int[KEY_COUNT + 1];
+    int[] lastName = new int[KEY_COUNT];
+    Arrays.fill(lastName, -1);
+    for (int id = 0; id < count; ++id)
+    {
+      final String name = names.get(id);
+      int key = 0;
+      for (int i = 0; i < name.length(); ++i)
+      {
+        key = ((key & KEY_MASK) << CHAR_BITS) | code(name.charAt(i));
+        if ((i >= 2) && (lastName[key] != id))
+        {
+          lastName[key] = id;
+          ++start[key + 1];
+        }
+      }
+    }
+
+    for (int i = 0; i < KEY_COUNT; ++i)
+    {
+      start[i + 1] += start[i];
+    }
+
+    // Fill in the postings, in name order
+    postings = new int[start[KEY_COUNT]];
+    int[] next = Arrays.copyOf(start, KEY_COUNT);
+    Arrays.fill(lastName, -1);
+    for (int id = 0; id < count; ++id)
+    {
+      final String name = names.get(id);
+      int key = 0;
+      for (int i = 0; i < name.length(); ++i)
+      {
+        key = ((key & KEY_MASK) << CHAR_BITS) | code(name.charAt(i));
+        if ((i >= 2) && (lastName[key] != id))
+        {
+          lastName[key] = id;
+          postings[next[key]++] = id;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Map a character to its code in a trigram key.  Letters (either
+   * case), digits and underscores get their own codes; any other
+   * character shares a code with others, which only means a few
+   * extra candidates to check.
+   *
+   * @param ch the character
+   * @return the code, from 1 to 63
+   */
+  private static int code(final char ch)
+  {
+    if ((ch >= 'A') && (ch <= 'Z'))
+    {
+      return (ch - 'A' + 1);
+    }
+    else if ((ch >= 'a') && (ch <= 'z'))
+    {
+      return (ch - 'a' + 1);
+    }
+    else if ((ch >= '0') && (ch <= '9'))
+    {
+      return (ch - '0' + 27);
+    }
+    else if (ch == '_')
+    {
+      return 37;
+    }
+
+    return (38 + (ch % 26));
+  }
+
+
+  @Override
+  public int[] search(final List<String> tokens)
+  {
+    if (tokens.isEmpty())
+    {
+      return allNames(names.size());
+    }
+
+    // Intersect the postings of every trigram of every token,
+    // starting with the shortest
+    final int[] keys = getKeys(tokens);
+    int[] candidates = null;
+    int size = 0;
+    for (int k = 0; k < keys.length; ++k)
+    {
+      final int key = keys[k];
+      if (candidates == null)
+      {
+        candidates = Arrays.copyOfRange(postings, start[key], start[key + 1]);
+        size = candidates.length;
+      }
+      else
+      {
+        size = intersect(candidates, size, start[key], start[key + 1]);
+      }
+
+      if (size == 0)
+      {
+        return new int[0];
+      }
+    }
+
+    // With no token long enough to have a trigram, check every name
+    if (candidates == null)
+    {
+      return scanner.search(tokens);
+    }
+
+    // Check the candidates
+    final Thread searcher = Thread.currentThread();
+    int matches = 0;
+    for (int i = 0; i < size; ++i)
+    {
+      Cancellation.check(searcher, i);
+      if (ScanIndex.containsAll(names.get(candidates[i]), tokens))
+      {
+        candidates[matches++] = candidates[i];
+      }
+    }
+
+    return ((matches == candidates.length) ? candidates :
+              Arrays.copyOf(candidates, matches));
+  }
+
+
+  /**
+   * Return the distinct trigram keys of the tokens, ordered by the
+   * length of their posting lists, shortest first.
+   *
+   * @param tokens the search tokens
+   * @return the trigram keys
+   */
+  private int[] getKeys(final List<String> tokens)
+  {
+    // Pack each key with its posting count, so sorting the longs
+    // sorts the keys by count
+    long[] packed = new long[16];
+    int size = 0;
+    for (int t = 0; t < tokens.size(); ++t)
+    {
+      final String token = tokens.get(t);
+      int key = 0;
+      for (int i = 0; i < token.length(); ++i)
+      {
+        key = ((key & KEY_MASK) << CHAR_BITS) | code(token.charAt(i));
+        if (i >= 2)
+        {
+          if (size == packed.length)
+          {
+            packed = Arrays.copyOf(packed, size * 2);
+          }
+
+          packed[size++] = (((long) (start[key + 1] - start[key])) << 32) | key;
+        }
+      }
+    }
+
+    Arrays.sort(packed, 0, size);
+    int[] keys = new int[size];
+    int count = 0;
+    for (int i = 0; i < size; ++i)
+    {
+      if ((i == 0) || (packed[i] != packed[i - 1]))
+      {
+        keys[count++] = (int) packed[i];
+      }
+    }
+
+    return Arrays.copyOf(keys, count);
+  }
+
+
+  /**
+   * Keep only the candidates found in a range of the postings.  Both
+   * are in increasing order.  When the candidates are far fewer,
+   * each one is found by a binary search starting where the previous
+   * one was found; otherwise the two are merged.
+   *
+   * @param candidates the candidate name IDs
+   * @param size the number of candidates
+   * @param from the start of the postings range
+   * @param to the end of the postings range
+   * @return the number of candidates kept
+   */
+  private int intersect(final int[] candidates, final int size,
+                        final int from, final int to)
+  {
+    int kept = 0;
+    int low = from;
+    if ((to - from) > (size * 16))
+    {
+      for (int i = 0; (i < size) && (low < to); ++i)
+      {
+        final int index = Arrays.binarySearch(postings, low, to, candidates[i]);
+        if (index >= 0)
+        {
+          candidates[kept++] = candidates[i];
+          low = index + 1;
+        }
+        else
+        {
+          low = -index - 1;
+        }
+      }
+    }
+    else
+    {
+      for (int i = 0; (i < size) && (low < to); ++i)
+      {
+        final int id = candidates[i];
+        while ((low < to) && (postings[low] < id))
+        {
+          ++low;
+        }
+
+        if ((low < to) && (postings[low] == id))
+        {
+          candidates[kept++] = id;
+          ++low;
+        }
+      }
+    }
+
+    return kept;
+  }
+
+
+  /**
+   * Return the IDs of all names.
+   *
+   * @param count the number of names
+   * @return the IDs from 0 to count - 1
+   */
+  private static int[] allNames(final int count)
+  {
+    int[] ids = new int[count];
+    for (int i = 0; i < count; ++i)
+    {
+      ids[i] = i;
+    }
+
+    return ids;
+  }
+
+
+  @Override
+  public long getBytes()
+  {
+    return (4L * (start.length + postings.length));
+  }
+}
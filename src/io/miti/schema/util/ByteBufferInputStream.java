@@ -0,0 +1,68 @@
+package io.miti.schema.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream that reads from a byte buffer, such as a
+ * memory-mapped file.
+ */
+public final class ByteBufferInputStream extends InputStream
+{
+  /** The buffer to read. */
+  private ByteBuffer buffer = null;
+  
+  
+  /**
+   * Constructor taking the buffer.  The stream reads from the
+   * buffer's current position to its limit.
+   * 
+   * @param buf the buffer to read
+   */
+  public ByteBufferInputStream(final ByteBuffer buf)
+  {
+    buffer = buf.duplicate();
+  }
+  
+  
+  @Override
+  public int read()
+  {
+    return (buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1);
+  }
+  
+  
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+    
+    final int count = Math.min(len, buffer.remaining());
+    if (count == 0)
+    {
+      return -1;
+    }
+    
+    buffer.get(b, off, count);
+    return count;
+  }
+  
+  
+  @Override
+  public long skip(final long n)
+  {
+    final int count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + count);
+    return count;
+  }
+  
+  
+  @Override
+  public int available()
+  {
+    return buffer.remaining();
+  }
+}
@@ -0,0 +1,267 @@
+package io.miti.schema.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record the wall-clock time and the bytes allocated by each phase
+ * of startup.  Phases may run on different threads; each one is
+ * measured on the thread that runs it.  Once startup finishes, the
+ * report is written to the log (and optionally to standard output),
+ * and further phases are ignored.
+ */
+public final class StartupTimer
+{
+  /** The one instance of this class. */
+  private static final StartupTimer timer = new StartupTimer();
+
+  /** The phases, in the order they started. */
+  private Map<String, Phase> phases = new LinkedHashMap<String, Phase>(16);
+
+  /** Extra information to include in the report. */
+  private List<String> notes = new ArrayList<String>(4);
+
+  /** Whether to print the report to standard output. */
+  private boolean printReport = false;
+
+  /** Whether startup has finished. */
+  private boolean finished = false;
+
+  /** Used to read the bytes allocated by a thread, if supported. */
+  private com.sun.management.ThreadMXBean allocBean = null;
+
+
+  /**
+   * The measurements for one phase.
+   */
+  private static final class Phase
+  {
+    /** The start time, in nanoseconds. */
+    private long startTime = 0L;
+
+    /** The bytes allocated by the thread at the start. */
+    private long startBytes = 0L;
+
+    /** The elapsed time, in nanoseconds, or -1 if still running. */
+    private long elapsed = -1L;
+
+    /** The bytes allocated by the phase, or -1 if unknown. */
+    private long allocated = -1L;
+
+    /**
+     * Default constructor.
+     */
+    Phase()
+    {
+      super();
+    }
+  }
+
+
+  /**
+   * Default constructor.
+   */
+  private StartupTimer()
+  {
+    // Allocation counts need the HotSpot extension of the thread bean
+    try
+    {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean)
+      {
+        allocBean = (com.sun.management.ThreadMXBean) bean;
+        if (!allocBean.isThreadAllocatedMemorySupported())
+        {
+          allocBean = null;
+        }
+        else if (!allocBean.isThreadAllocatedMemoryEnabled())
+        {
+          allocBean.setThreadAllocatedMemoryEnabled(true);
+        }
+      }
+    }
+    catch (Throwable t)
+    {
+      allocBean = null;
+    }
+  }
+
+
+  /**
+   * Set whether to print the report to standard output.
+   *
+   * @param print whether to print the report
+   */
+  public static void setPrintReport(final boolean print)
+  {
+    synchronized (timer)
+    {
+      timer.printReport = print;
+    }
+  }
+
+
+  /**
+   * Record the time from JVM start until main() was called.  This
+   * should be the first phase recorded.
+   */
+  public static void recordJvmStart()
+  {
+    final long jvmTime = System.currentTimeMillis() -
+                           ManagementFactory.getRuntimeMXBean().getStartTime();
+    synchronized (timer)
+    {
+      Phase phase = new Phase();
+      phase.elapsed = jvmTime * 1000000L;
+      phase.allocated = timer.getAllocatedBytes();
+      timer.phases.put("JVM start", phase);
+    }
+  }
+
+
+  /**
+   * Start timing a phase on the current thread.
+   *
+   * @param name the name of the phase
+   */
+  public static void start(final String name)
+  {
+    synchronized (timer)
+    {
+      if (timer.finished)
+      {
+        return;
+      }
+
+      Phase phase = new Phase();
+      phase.startBytes = timer.getAllocatedBytes();
+      phase.startTime = System.nanoTime();
+      timer.phases.put(name, phase);
+    }
+  }
+
+
+  /**
+   * Stop timing a phase.  This must be called on the thread that
+   * started the phase.
+   *
+   * @param name the name of the phase
+   */
+  public static void end(final String name)
+  {
+    final long endTime = System.nanoTime();
+    synchronized (timer)
+    {
+      Phase phase = timer.phases.get(name);
+      if (timer.finished || (phase == null) || (phase.elapsed >= 0L))
+      {
+        return;
+      }
+
+      phase.elapsed = endTime - phase.startTime;
+      final long bytes = timer.getAllocatedBytes();
+      phase.allocated = ((bytes < 0L) || (phase.startBytes < 0L)) ?
+                          -1L : (bytes - phase.startBytes);
+    }
+  }
+
+
+  /**
+   * Add a line of information to the report, such as the size
+   * of the snapshot.
+   *
+   * @param note the information
+   */
+  public static void addNote(final String note)
+  {
+    synchronized (timer)
+    {
+      if (!timer.finished)
+      {
+        timer.notes.add(note);
+      }
+    }
+  }
+
+
+  /**
+   * Startup has finished, so write the report to the log, and to
+   * standard output if requested.
+   */
+  public static void finish()
+  {
+    final long totalTime = System.currentTimeMillis() -
+                             ManagementFactory.getRuntimeMXBean().getStartTime();
+    String report = null;
+    boolean print = false;
+    synchronized (timer)
+    {
+      if (timer.finished)
+      {
+        return;
+      }
+
+      timer.finished = true;
+      report = timer.buildReport(totalTime);
+      print = timer.printReport;
+    }
+
+    Logger.info(report);
+    if (print)
+    {
+      System.out.println(report);
+    }
+  }
+
+
+  /**
+   * Build the report.
+   *
+   * @param totalTime the time since JVM start, in milliseconds
+   * @return the report
+   */
+  private String buildReport(final long totalTime)
+  {
+    final String eoln = Utility.getLineSeparator();
+    StringBuilder sb = new StringBuilder(500);
+    sb.append("Startup report").append(eoln);
+    for (String note : notes)
+    {
+      sb.append("  ").append(note).append(eoln);
+    }
+
+    sb.append(String.format("  %-28s %10s %12s", "Phase", "Time (ms)", "Allocated"))
+      .append(eoln);
+    for (Map.Entry<String, Phase> entry : phases.entrySet())
+    {
+      final Phase phase = entry.getValue();
+      sb.append(String.format("  %-28s %10s %12s", entry.getKey(),
+          (phase.elapsed < 0L) ? "-" : String.format("%.1f", phase.elapsed / 1000000.0),
+          (phase.allocated < 0L) ? "-" : Utility.getBytesString(phase.allocated)))
+        .append(eoln);
+    }
+
+    sb.append(String.format("  %-28s %10d", "Total (JVM start to ready)", totalTime));
+    return sb.toString();
+  }
+
+
+  /**
+   * Return the number of bytes allocated by the current thread.
+   *
+   * @return the bytes allocated, or -1 if not supported
+   */
+  private long getAllocatedBytes()
+  {
+    if (allocBean == null)
+    {
+      return -1L;
+    }
+
+    return allocBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,674 @@
+package io.miti.schema.util;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+
+/**
+ * An opt-in monitor of how responsive the user interface is.  Every
+ * event is dispatched through a queue that times it, and a watchdog
+ * thread checks on the event dispatch thread several times per
+ * threshold; when one event has been running longer than the
+ * threshold, the watchdog captures the stack of the dispatch thread,
+ * which shows the code that is blocking it.  Each such stall is
+ * written to the log once its event finishes.
+ *
+ * The monitor also keeps histograms of how long events take to
+ * dispatch, how long a keystroke takes to be painted, and how long
+ * a keystroke takes to be painted with its search results.  The
+ * paint times come from a repaint manager that notes when each
+ * batch of dirty regions has been painted.
+ *
+ * Events dispatched while another event is still running (such as
+ * while a modal dialog is open) are timed on their own, and the
+ * event that is waiting for them isn't counted.
+ */
+public final class UIMonitor
+{
+  /** The default stall threshold, in milliseconds. */
+  public static final int DEFAULT_THRESHOLD = 200;
+
+  /** The most stalls kept for the report. */
+  private static final int MAX_STALLS = 20;
+
+  /** The most stack frames kept for each stall. */
+  private static final int MAX_FRAMES = 40;
+
+  /** The most characters of an event's description. */
+  private static final int MAX_EVENT_LENGTH = 160;
+
+  /** The monitor, or null if monitoring is off. */
+  private static volatile UIMonitor monitor = null;
+
+  /** The stall threshold, in milliseconds. */
+  private final int threshold;
+
+  /** The stall threshold, in nanoseconds. */
+  private final long thresholdNanos;
+
+  /** The time taken to dispatch each event. */
+  private final Histogram dispatchTimes = new Histogram("Event dispatch");
+
+  /** The time from a keystroke to the next paint. */
+  private final Histogram keyPaintTimes = new Histogram("Keystroke to repaint");
+
+  /** The time from a keystroke to painting its search results. */
+  private final Histogram keyResultTimes = new Histogram("Keystroke to results");
+
+  /** The most recent stalls, oldest first. */
+  private final List<Stall> stalls = new LinkedList<Stall>();
+
+  /** The number of stalls seen. */
+  private long stallCount = 0L;
+
+  /** A stall captured by the watchdog whose event is still running. */
+  private Stall pending = null;
+
+  /** The dispatch thread, once an event has been dispatched. */
+  private volatile Thread dispatchThread = null;
+
+  /** When the current event started, or 0 if none is running. */
+  private volatile long dispatchStart = 0L;
+
+  /** The sequence number of the current event. */
+  private volatile long dispatchSeq = 0L;
+
+  /** The number of events being dispatched, one inside the other. */
+  private int depth = 0;
+
+  /** For each level of dispatch, whether other events ran inside it. */
+  private boolean[] nested = new boolean[8];
+
+  /** When the oldest keystroke not yet painted happened, or 0. */
+  private long keyPaintStart = 0L;
+
+  /** When the last keystroke happened, or 0. */
+  private long lastKey = 0L;
+
+  /** When the keystroke for the results waiting to be painted happened, or 0. */
+  private long keyResultStart = 0L;
+
+
+  /**
+   * Constructor.
+   *
+   * @param thresholdMillis the stall threshold, in milliseconds
+   */
+  private UIMonitor(final int thresholdMillis)
+  {
+    threshold = thresholdMillis;
+    thresholdNanos = thresholdMillis * 1000000L;
+  }
+
+
+  /**
+   * Start monitoring the user interface.  This should be called
+   * once, before the GUI is created.
+   *
+   * @param thresholdMillis the stall threshold, in milliseconds
+   */
+  public static synchronized void install(final int thresholdMillis)
+  {
+    if (monitor != null)
+    {
+      return;
+    }
+
+    monitor = new UIMonitor(Math.max(thresholdMillis, 1));
+    Toolkit.getDefaultToolkit().getSystemEventQueue().push(new MonitoredQueue());
+
+    // Check on the dispatch thread a few times per threshold
+    final long period = Math.max(monitor.threshold / 4, 10);
+    Timer watchdog = new Timer("UI monitor", true);
+    watchdog.schedule(new TimerTask()
+    {
+      @Override
+      public void run()
+      {
+        monitor.checkDispatch();
+      }
+    }, period, period);
+
+    SwingUtilities.invokeLater(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        RepaintManager.setCurrentManager(new MonitoredRepaintManager());
+      }
+    });
+
+    Logger.info("Monitoring the UI, with a stall threshold of " +
+                thresholdMillis + " ms");
+  }
+
+
+  /**
+   * Return whether the user interface is being monitored.
+   *
+   * @return whether monitoring is on
+   */
+  public static boolean isEnabled()
+  {
+    return (monitor != null);
+  }
+
+
+  /**
+   * Note that the results of a search were shown, so the next paint
+   * is timed from the last keystroke.  This must be called on the
+   * event dispatch thread.
+   */
+  public static void markResults()
+  {
+    final UIMonitor mon = monitor;
+    if ((mon != null) && (mon.lastKey != 0L))
+    {
+      mon.keyResultStart = mon.lastKey;
+      mon.lastKey = 0L;
+    }
+  }
+
+
+  /**
+   * Return the report of the histograms and recent stalls.
+   *
+   * @return the report, or null if monitoring is off
+   */
+  public static String getReport()
+  {
+    final UIMonitor mon = monitor;
+    return ((mon == null) ? null : mon.buildReport());
+  }
+
+
+  /**
+   * Write the report to the log, if monitoring is on.
+   */
+  public static void logReport()
+  {
+    final String report = getReport();
+    if (report != null)
+    {
+      Logger.info(report);
+    }
+  }
+
+
+  /**
+   * An event is about to be dispatched.
+   *
+   * @param event the event
+   * @param start when the dispatch started, in nanoseconds
+   * @return the sequence number of the event
+   */
+  private long startDispatch(final AWTEvent event, final long start)
+  {
+    dispatchThread = Thread.currentThread();
+    if (depth > 0)
+    {
+      nested[depth - 1] = true;
+    }
+    if (depth == nested.length)
+    {
+      nested = Arrays.copyOf(nested, depth * 2);
+    }
+    nested[depth++] = false;
+
+    // Time keystrokes from when they happened, so the time spent
+    // waiting in the queue is included
+    if (event.getID() == KeyEvent.KEY_PRESSED)
+    {
+      final long queued = Math.max(0L,
+          System.currentTimeMillis() - ((KeyEvent) event).getWhen());
+      final long keyTime = start - (queued * 1000000L);
+      if (keyPaintStart == 0L)
+      {
+        keyPaintStart = keyTime;
+      }
+      lastKey = keyTime;
+    }
+
+    final long seq = dispatchSeq + 1L;
+    dispatchSeq = seq;
+    dispatchStart = start;
+    return seq;
+  }
+
+
+  /**
+   * An event has been dispatched.
+   *
+   * @param event the event
+   * @param seq the sequence number of the event
+   * @param start when the dispatch started, in nanoseconds
+   */
+  private void endDispatch(final AWTEvent event, final long seq,
+                           final long start)
+  {
+    final long elapsed = System.nanoTime() - start;
+    final boolean waited = nested[--depth];
+
+    // The dispatch thread is idle, or waiting for events inside
+    // an earlier event
+    dispatchStart = 0L;
+
+    Stall stall = null;
+    synchronized (this)
+    {
+      if ((pending != null) && (pending.seq == seq))
+      {
+        stall = pending;
+        pending = null;
+      }
+    }
+
+    if (waited)
+    {
+      return;
+    }
+
+    dispatchTimes.add(elapsed);
+    if (elapsed < thresholdNanos)
+    {
+      return;
+    }
+
+    // The watchdog may have missed a stall just over the threshold
+    if (stall == null)
+    {
+      stall = new Stall(seq, null);
+    }
+    stall.finish(elapsed, describe(event));
+
+    synchronized (this)
+    {
+      ++stallCount;
+      stalls.add(stall);
+      if (stalls.size() > MAX_STALLS)
+      {
+        stalls.remove(0);
+      }
+    }
+
+    Logger.warn(stall.toString());
+  }
+
+
+  /**
+   * Check whether the current event has been running longer than
+   * the threshold, and if so, capture the stack of the dispatch
+   * thread.  This runs on the watchdog thread.
+   */
+  private void checkDispatch()
+  {
+    final long seq = dispatchSeq;
+    final long start = dispatchStart;
+    final Thread thread = dispatchThread;
+    if ((start == 0L) || (thread == null) ||
+        ((System.nanoTime() - start) < thresholdNanos))
+    {
+      return;
+    }
+
+    synchronized (this)
+    {
+      if ((pending != null) && (pending.seq == seq))
+      {
+        return;
+      }
+    }
+
+    final StackTraceElement[] stack = thread.getStackTrace();
+    synchronized (this)
+    {
+      // Only keep the stack if the same event is still running
+      if ((dispatchSeq == seq) && (dispatchStart == start))
+      {
+        pending = new Stall(seq, stack);
+      }
+    }
+  }
+
+
+  /**
+   * A batch of dirty regions has been painted, so record the time
+   * since any keystrokes or results waiting to be painted.  This
+   * runs on the event dispatch thread.
+   */
+  private void painted()
+  {
+    final long now = System.nanoTime();
+    if (keyPaintStart != 0L)
+    {
+      keyPaintTimes.add(now - keyPaintStart);
+      keyPaintStart = 0L;
+    }
+
+    if (keyResultStart != 0L)
+    {
+      keyResultTimes.add(now - keyResultStart);
+      keyResultStart = 0L;
+    }
+  }
+
+
+  /**
+   * Build the report.
+   *
+   * @return the report
+   */
+  private String buildReport()
+  {
+    final String eoln = Utility.getLineSeparator();
+    StringBuilder sb = new StringBuilder(2000);
+    sb.append("UI monitor (stall threshold ").append(threshold).append(" ms)")
+      .append(eoln);
+    sb.append(String.format("  %-22s %8s %8s %8s %8s %8s %8s", "Latency (ms)",
+        "Count", "Mean", "50%", "90%", "99%", "Max")).append(eoln);
+    dispatchTimes.appendSummary(sb, eoln);
+    keyPaintTimes.appendSummary(sb, eoln);
+    keyResultTimes.appendSummary(sb, eoln);
+
+    sb.append(eoln).append(String.format("  %-22s", "Distribution (ms)"));
+    for (int i = 0; i < Histogram.BUCKETS; ++i)
+    {
+      sb.append(String.format(" %6s", Histogram.getBucketName(i)));
+    }
+    sb.append(eoln);
+    dispatchTimes.appendBuckets(sb, eoln);
+    keyPaintTimes.appendBuckets(sb, eoln);
+    keyResultTimes.appendBuckets(sb, eoln);
+
+    synchronized (this)
+    {
+      sb.append(eoln).append("  Stalls: ").append(stallCount);
+      if (stallCount > stalls.size())
+      {
+        sb.append(" (the last ").append(stalls.size()).append(" are shown)");
+      }
+      sb.append(eoln);
+      for (Stall stall : stalls)
+      {
+        sb.append(eoln).append(stall.toString()).append(eoln);
+      }
+    }
+
+    return sb.toString();
+  }
+
+
+  /**
+   * Return a description of an event, for the report.
+   *
+   * @param event the event
+   * @return the description
+   */
+  private static String describe(final AWTEvent event)
+  {
+    final String desc = event.toString();
+    return ((desc.length() <= MAX_EVENT_LENGTH) ? desc :
+              (desc.substring(0, MAX_EVENT_LENGTH) + "..."));
+  }
+
+
+  /**
+   * An event that ran longer than the threshold.
+   */
+  private static final class Stall
+  {
+    /** The sequence number of the event. */
+    private final long seq;
+
+    /** The stack of the dispatch thread, or null if not captured. */
+    private final StackTraceElement[] stack;
+
+    /** When the stall was captured. */
+    private final long time;
+
+    /** How long the event ran, in nanoseconds. */
+    private long elapsed = 0L;
+
+    /** The description of the event. */
+    private String event = null;
+
+    /**
+     * Constructor.
+     *
+     * @param eventSeq the sequence number of the event
+     * @param eventStack the stack of the dispatch thread, or null
+     */
+    Stall(final long eventSeq, final StackTraceElement[] eventStack)
+    {
+      seq = eventSeq;
+      stack = eventStack;
+      time = System.currentTimeMillis();
+    }
+
+    /**
+     * The event finished.
+     *
+     * @param nanos how long the event ran
+     * @param desc the description of the event
+     */
+    void finish(final long nanos, final String desc)
+    {
+      elapsed = nanos;
+      event = desc;
+    }
+
+    @Override
+    public String toString()
+    {
+      final String eoln = Utility.getLineSeparator();
+      StringBuilder sb = new StringBuilder(1000);
+      sb.append(String.format("  UI stall of %d ms at %tT in %s",
+          elapsed / 1000000L, time, event)).append(eoln);
+      if (stack == null)
+      {
+        sb.append("    (the stack was not captured)");
+        return sb.toString();
+      }
+
+      final int frames = Math.min(stack.length, MAX_FRAMES);
+      for (int i = 0; i < frames; ++i)
+      {
+        sb.append("    at ").append(stack[i]);
+        if (i < (frames - 1))
+        {
+          sb.append(eoln);
+        }
+      }
+
+      if (stack.length > frames)
+      {
+        sb.append(eoln).append("    ... ").append(stack.length - frames)
+          .append(" more");
+      }
+
+      return sb.toString();
+    }
+  }
+
+
+  /**
+   * A histogram of latencies, with buckets that double in size.
+   */
+  private static final class Histogram
+  {
+    /** The number of buckets. */
+    static final int BUCKETS = 12;
+
+    /** The name of the latency. */
+    private final String name;
+
+    /** The count in each bucket; bucket i holds times under 2^i ms. */
+    private final long[] counts = new long[BUCKETS];
+
+    /** The number of times recorded. */
+    private long count = 0L;
+
+    /** The sum of the times recorded, in nanoseconds. */
+    private long total = 0L;
+
+    /** The longest time recorded, in nanoseconds. */
+    private long max = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param latency the name of the latency
+     */
+    Histogram(final String latency)
+    {
+      name = latency;
+    }
+
+    /**
+     * Record a time.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    synchronized void add(final long nanos)
+    {
+      final long millis = nanos / 1000000L;
+      final int bucket = (millis == 0L) ? 0 :
+          Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKETS - 1);
+      ++counts[bucket];
+      ++count;
+      total += nanos;
+      max = Math.max(max, nanos);
+    }
+
+    /**
+     * Return the name of a bucket: the time its entries are under.
+     *
+     * @param bucket the bucket
+     * @return the name
+     */
+    static String getBucketName(final int bucket)
+    {
+      return ((bucket == (BUCKETS - 1)) ? (">=" + (1 << (bucket - 1))) :
+                ("<" + (1 << bucket)));
+    }
+
+    /**
+     * Return the upper bound of the bucket holding a percentile.
+     *
+     * @param percent the percentile
+     * @return the bound, in milliseconds, as text
+     */
+    private String getPercentile(final int percent)
+    {
+      final long rank = ((count * percent) + 99L) / 100L;
+      long seen = 0L;
+      for (int i = 0; i < BUCKETS; ++i)
+      {
+        seen += counts[i];
+        if (seen >= rank)
+        {
+          return getBucketName(i);
+        }
+      }
+
+      return "-";
+    }
+
+    /**
+     * Add the summary line of the histogram to a report.
+     *
+     * @param sb the report
+     * @param eoln the line separator
+     */
+    synchronized void appendSummary(final StringBuilder sb, final String eoln)
+    {
+      if (count == 0L)
+      {
+        sb.append(String.format("  %-22s %8d", name, count)).append(eoln);
+        return;
+      }
+
+      sb.append(String.format("  %-22s %8d %8.1f %8s %8s %8s %8.1f", name, count,
+          total / (count * 1000000.0), getPercentile(50), getPercentile(90),
+          getPercentile(99), max / 1000000.0)).append(eoln);
+    }
+
+    /**
+     * Add the bucket counts of the histogram to a report.
+     *
+     * @param sb the report
+     * @param eoln the line separator
+     */
+    synchronized void appendBuckets(final StringBuilder sb, final String eoln)
+    {
+      sb.append(String.format("  %-22s", name));
+      for (int i = 0; i < BUCKETS; ++i)
+      {
+        sb.append(String.format(" %6d", counts[i]));
+      }
+      sb.append(eoln);
+    }
+  }
+
+
+  /**
+   * The event queue that times each event.
+   */
+  private static final class MonitoredQueue extends EventQueue
+  {
+    /**
+     * Default constructor.
+     */
+    MonitoredQueue()
+    {
+      super();
+    }
+
+    @Override
+    protected void dispatchEvent(final AWTEvent event)
+    {
+      final UIMonitor mon = monitor;
+      final long start = System.nanoTime();
+      final long seq = mon.startDispatch(event, start);
+      try
+      {
+        super.dispatchEvent(event);
+      }
+      finally
+      {
+        mon.endDispatch(event, seq, start);
+      }
+    }
+  }
+
+
+  /**
+   * The repaint manager that notes when dirty regions are painted.
+   */
+  private static final class MonitoredRepaintManager extends RepaintManager
+  {
+    /**
+     * Default constructor.
+     */
+    MonitoredRepaintManager()
+    {
+      super();
+    }
+
+    @Override
+    public void paintDirtyRegions()
+    {
+      super.paintDirtyRegions();
+      monitor.painted();
+    }
+  }
+}
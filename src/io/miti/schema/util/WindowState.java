@@ -51,6 +51,24 @@ public final class WindowState
    */
   private boolean logOverwrite = true;
   
+  /**
+   * The path of an external snapshot file, or null to use the
+   * snapshot bundled with the application.
+   */
+  private String snapshotFile = null;
+  
+  /**
+   * The kind of search index to build (scan, trigram or suffix),
+   * or null to use the default.
+   */
+  private String searchIndex = null;
+  
+  /**
+   * The time, in milliseconds, an event may block the user interface
+   * before it is reported as a stall, or 0 to not monitor the UI.
+   */
+  private int stallThreshold = 0;
+  
   
   /**
    * Default constructor.
@@ -260,6 +278,18 @@ public final class WindowState
     prop.put("log.level", Integer.toString(logLevel));
     prop.put("log.file", logFile);
     prop.put("log.overwrite", logOverwrite ? "1" : "0");
+    if (snapshotFile != null)
+    {
+      prop.put("snapshot.file", snapshotFile);
+    }
+    if (searchIndex != null)
+    {
+      prop.put("search.index", searchIndex);
+    }
+    if (stallThreshold > 0)
+    {
+      prop.put("ui.stall.ms", Integer.toString(stallThreshold));
+    }
     
     // Save the properties to a file
     Utility.storeProperties(filename, prop);
@@ -309,6 +339,27 @@ public final class WindowState
       ws.logOverwrite = (val.equals("1"));
     }
     
+    // Read the path of an external snapshot file
+    val = props.getProperty("snapshot.file");
+    if ((val != null) && (val.trim().length() > 0))
+    {
+      ws.snapshotFile = val.trim();
+    }
+    
+    // Read the kind of search index to build
+    val = props.getProperty("search.index");
+    if ((val != null) && (val.trim().length() > 0))
+    {
+      ws.searchIndex = val.trim();
+    }
+    
+    // Read the threshold for reporting UI stalls
+    val = props.getProperty("ui.stall.ms");
+    if ((val != null) && (val.trim().length() > 0))
+    {
+      ws.stallThreshold = Utility.getStringAsInteger(val.trim(), 0, 0);
+    }
+    
     // Instantiate a logging class
     Logger.initialize(ws.logLevel, ws.logFile, ws.logOverwrite);
     
@@ -338,6 +389,39 @@ public final class WindowState
   }
   
   
+  /**
+   * Return the path of the external snapshot file.
+   * 
+   * @return the snapshot file path, or null if not set
+   */
+  public String getSnapshotFile()
+  {
+    return snapshotFile;
+  }
+  
+  
+  /**
+   * Return the kind of search index to build.
+   * 
+   * @return the search index name, or null if not set
+   */
+  public String getSearchIndex()
+  {
+    return searchIndex;
+  }
+  
+  
+  /**
+   * Return the threshold for reporting UI stalls.
+   * 
+   * @return the threshold in milliseconds, or 0 if not set
+   */
+  public int getStallThreshold()
+  {
+    return stallThreshold;
+  }
+  
+  
   /**
    * Cast the string to an integer and return it.
    * 